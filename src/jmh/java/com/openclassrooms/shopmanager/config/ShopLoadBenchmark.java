@@ -0,0 +1,139 @@
+package com.openclassrooms.shopmanager.config;
+
+import com.openclassrooms.shopmanager.Application;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load test of the Spring profiles, over HTTP against the embedded server: the defaults, the {@code production}
+ * settings, and virtual threads with the {@value VirtualThreadConfig#PROFILE} profile, which needs Java 21 or later.
+ * Each benchmark thread is a customer with its own session, listing the catalog or checking out a one-product cart.
+ * <p>
+ * Throughput mode gives the requests served per second, sample time mode the latency percentiles, p0.99 included.
+ * Run a single profile with {@code -p profiles=production}, or several at once with
+ * {@code -p profiles=production+virtual-threads}, as JMH takes commas as separators between parameter values.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dhttp.maxConnections=256")
+@Threads(64)
+public class ShopLoadBenchmark {
+
+    private static final String DEFAULT_PROFILE = "default";
+
+    private static final Pattern CSRF_TOKEN = Pattern.compile("name=\"_csrf\" value=\"([^\"]+)\"");
+
+    private static final String ORDER_FORM =
+            "name=Customer&address=1+Main+Street&city=Springfield&zip=12345&country=USA&_csrf=";
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({DEFAULT_PROFILE, "production", VirtualThreadConfig.PROFILE})
+        private String profiles;
+
+        private ConfigurableApplicationContext context;
+        private String baseUrl;
+
+        @Setup
+        public void start() {
+            final SpringApplicationBuilder builder = new SpringApplicationBuilder(Application.class)
+                    .properties("spring.main.banner-mode=off", "server.port=0");
+            if (!DEFAULT_PROFILE.equals(profiles))
+                builder.profiles(profiles.split("\\+"));
+            context = builder.run();
+
+            // Enough stock for every checkout of the run, so that no product runs out
+            context.getBean(JdbcTemplate.class).update("UPDATE product SET quantity = ?", Integer.MAX_VALUE / 2);
+            context.getBean(EntityManagerFactory.class).getCache().evictAll();
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+
+        @TearDown
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Customer {
+
+        private String baseUrl;
+        private String sessionCookie;
+        private String csrfToken;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(64 * 1024);
+        private final byte[] buffer = new byte[8192];
+
+        @Setup
+        public void openSession(Server server) throws IOException {
+            baseUrl = server.baseUrl;
+            request("GET", "/products", null);
+            final Matcher matcher = CSRF_TOKEN.matcher(new String(body.toByteArray(), StandardCharsets.UTF_8));
+            if (sessionCookie == null || !matcher.find())
+                throw new IllegalStateException("No session or CSRF token in the catalog page");
+            csrfToken = matcher.group(1);
+        }
+
+        /**
+         * Sends a request in the session of the customer and reads the whole response, without following redirects.
+         *
+         * @return status code of the response
+         */
+        private int request(String method, String path, String form) throws IOException {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setInstanceFollowRedirects(false);
+            connection.setRequestMethod(method);
+            if (sessionCookie != null)
+                connection.setRequestProperty("Cookie", sessionCookie);
+            if (form != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+                try (OutputStream output = connection.getOutputStream()) {
+                    output.write(form.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            final int status = connection.getResponseCode();
+            final String cookie = connection.getHeaderField("Set-Cookie");
+            if (cookie != null && cookie.startsWith("JSESSIONID="))
+                sessionCookie = cookie.substring(0, cookie.indexOf(';') > 0 ? cookie.indexOf(';') : cookie.length());
+
+            // Reading the response to the end lets the connection be reused
+            body.reset();
+            try (InputStream input = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+                if (input != null) {
+                    for (int read; (read = input.read(buffer)) >= 0; )
+                        body.write(buffer, 0, read);
+                }
+            }
+            return status;
+        }
+    }
+
+    @Benchmark
+    public int listProducts(Customer customer) throws IOException {
+        return customer.request("GET", "/products", null);
+    }
+
+    @Benchmark
+    public int checkout(Customer customer) throws IOException {
+        customer.request("POST", "/order/addToCart", "productId=1&_csrf=" + customer.csrfToken);
+        return customer.request("POST", "/order", ORDER_FORM + customer.csrfToken);
+    }
+}
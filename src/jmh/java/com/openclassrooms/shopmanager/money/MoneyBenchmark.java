@@ -0,0 +1,68 @@
+package com.openclassrooms.shopmanager.money;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares summing the subtotals of cart lines with {@code double}, {@link BigDecimal} and {@link Money}. Run with
+ * {@code -prof gc} to compare allocations as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoneyBenchmark {
+
+    @Param({"10", "1000"})
+    private int lineCount;
+
+    private double[] doublePrices;
+    private BigDecimal[] decimalPrices;
+    private Money[] moneyPrices;
+    private int[] quantities;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        doublePrices = new double[lineCount];
+        decimalPrices = new BigDecimal[lineCount];
+        moneyPrices = new Money[lineCount];
+        quantities = new int[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            final long cents = 1 + random.nextInt(100000);
+            decimalPrices[i] = BigDecimal.valueOf(cents, 2);
+            doublePrices[i] = decimalPrices[i].doubleValue();
+            moneyPrices[i] = Money.ofMinor(cents);
+            quantities[i] = 1 + random.nextInt(10);
+        }
+    }
+
+    @Benchmark
+    public double sumDouble() {
+        double total = 0;
+        for (int i = 0; i < lineCount; i++)
+            total += doublePrices[i] * quantities[i];
+        return total;
+    }
+
+    @Benchmark
+    public BigDecimal sumBigDecimal() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < lineCount; i++)
+            total = total.add(decimalPrices[i].multiply(BigDecimal.valueOf(quantities[i])));
+        return total;
+    }
+
+    @Benchmark
+    public Money sumMoney() {
+        Money total = Money.ZERO;
+        for (int i = 0; i < lineCount; i++)
+            total = total.plus(moneyPrices[i].times(quantities[i]));
+        return total;
+    }
+}
@@ -0,0 +1,91 @@
+package com.openclassrooms.shopmanager.order;
+
+import com.openclassrooms.shopmanager.money.Money;
+import com.openclassrooms.shopmanager.product.Product;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cart operations used on every cart and checkout request, depending on the number of lines in the cart.
+ * Adding, removing and finding a line should not depend on the cart size, while filling a cart is linear.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CartBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    private int cartSize;
+
+    private List<Product> products;
+    private Cart cart;
+    private Product lastProduct;
+
+    @Setup
+    public void setUp() {
+        products = new ArrayList<>();
+        for (long id = 1; id <= cartSize; id++) {
+            final Product product = new Product();
+            product.setId(id);
+            product.setName("Product " + id);
+            product.setPrice(Money.ofMinor(id * 100 + 99));
+            product.setQuantity(1000);
+            products.add(product);
+        }
+        cart = new Cart();
+        for (Product product : products)
+            cart.addItem(product, 1);
+        lastProduct = products.get(products.size() - 1);
+    }
+
+    /**
+     * Adds one unit of the product of the last line, the worst case for a lookup by product.
+     */
+    @Benchmark
+    public Cart addItemToExistingLine() {
+        cart.addItem(lastProduct, 1);
+        return cart;
+    }
+
+    /**
+     * Removes the line of a product then adds it back, leaving the cart unchanged.
+     */
+    @Benchmark
+    public Cart removeAndAddLine() {
+        cart.removeLine(lastProduct);
+        cart.addItem(lastProduct, 1);
+        return cart;
+    }
+
+    /**
+     * Fills an empty cart with one line per product.
+     */
+    @Benchmark
+    public Cart fillCart() {
+        final Cart newCart = new Cart();
+        for (Product product : products)
+            newCart.addItem(product, 1);
+        return newCart;
+    }
+
+    @Benchmark
+    public Money getTotalValue() {
+        return cart.getTotalValue();
+    }
+
+    @Benchmark
+    public Money getAverageValue() {
+        return cart.getAverageValue();
+    }
+
+    @Benchmark
+    public Product findProductInCartLines() {
+        return cart.findProductInCartLines(lastProduct.getId());
+    }
+}
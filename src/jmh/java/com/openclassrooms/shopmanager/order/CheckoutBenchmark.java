@@ -0,0 +1,80 @@
+package com.openclassrooms.shopmanager.order;
+
+import com.openclassrooms.shopmanager.Application;
+import com.openclassrooms.shopmanager.product.Product;
+import com.openclassrooms.shopmanager.product.ProductRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a whole checkout through {@link OrderService#createOrder(Order)} against an embedded H2 database: saving the
+ * order and its lines, and removing the ordered quantities from the stock.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CheckoutBenchmark {
+
+    @Param({"100", "10000"})
+    private int productCount;
+
+    @Param({"1", "10", "50"})
+    private int cartSize;
+
+    private ConfigurableApplicationContext context;
+    private OrderService orderService;
+    private List<Product> products;
+    private int nextProduct;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.main.banner-mode=off", "logging.level.root=WARN")
+                .run();
+        orderService = context.getBean(OrderService.class);
+
+        final JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        final List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < productCount; i++)
+            rows.add(new Object[]{"Product " + i, "Description " + i, "", 9.99});
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO product (name, description, details, quantity, price) VALUES (?, ?, ?, 0, ?)", rows);
+        // Enough stock for every checkout of the run, so that no product runs out and leaves the catalog
+        jdbcTemplate.update("UPDATE product SET quantity = ?", Integer.MAX_VALUE / 2);
+        products = context.getBean(ProductRepository.class).findAll();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Order createOrder() {
+        final Cart cart = orderService.getCart();
+        for (int i = 0; i < cartSize; i++) {
+            cart.addItem(products.get(nextProduct), 1);
+            nextProduct = (nextProduct + 1) % products.size();
+        }
+
+        final Order order = new Order();
+        order.setName("Customer");
+        order.setAddress("1 Main Street");
+        order.setCity("Springfield");
+        order.setZip("12345");
+        order.setCountry("USA");
+        orderService.createOrder(order);
+        return order;
+    }
+}
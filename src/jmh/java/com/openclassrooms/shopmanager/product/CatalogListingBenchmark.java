@@ -0,0 +1,68 @@
+package com.openclassrooms.shopmanager.product;
+
+import com.openclassrooms.shopmanager.Application;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading the catalog as managed {@link Product} entities with loading it as {@link ProductSummary}
+ * projections, against an embedded H2 database. Run with {@code -prof gc} to compare allocation rates as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogListingBenchmark {
+
+    @Param({"1000", "10000"})
+    private int productCount;
+
+    @Param({"255"})
+    private int detailsLength;
+
+    private ConfigurableApplicationContext context;
+    private ProductRepository productRepository;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.main.banner-mode=off", "logging.level.root=WARN")
+                .run();
+        productRepository = context.getBean(ProductRepository.class);
+
+        final char[] details = new char[detailsLength];
+        Arrays.fill(details, 'd');
+        final List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < productCount; i++)
+            rows.add(new Object[]{"Product " + i, "Description " + i, new String(details), 100, 9.99});
+        context.getBean(JdbcTemplate.class).batchUpdate(
+                "INSERT INTO product (name, description, details, quantity, price) VALUES (?, ?, ?, ?, ?)", rows);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Product> entities() {
+        return productRepository.findAll();
+    }
+
+    @Benchmark
+    public List<ProductSummary> projections() {
+        return productRepository.findSummariesAfter(0L, PageRequest.of(0, productCount + 10));
+    }
+}
@@ -0,0 +1,92 @@
+package com.openclassrooms.shopmanager.product;
+
+import com.openclassrooms.shopmanager.Application;
+import com.openclassrooms.shopmanager.money.Money;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.View;
+import org.thymeleaf.spring5.view.ThymeleafViewResolver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to render the {@code products} page from products already loaded, as the view does after the controller
+ * returns. The page is rendered into a mock response, without the embedded server, so that pages larger than
+ * {@link ProductService#MAX_PAGE_SIZE} rows can be measured. Each session has its own CSRF token, and a few products
+ * change stock between renders, as they do when customers check out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductPageRenderBenchmark {
+
+    @Param({"500", "10000"})
+    private int productCount;
+
+    @Param({"10"})
+    private int changedProductsPerRender;
+
+    private ConfigurableApplicationContext context;
+    private View view;
+    private List<ProductSummary> products;
+    private int nextChangedProduct;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = new SpringApplicationBuilder(Application.class)
+                .properties("spring.main.banner-mode=off", "server.port=0", "logging.level.root=WARN",
+                        "logging.level.com.openclassrooms.shopmanager=WARN", "logging.level.org.springframework.web=WARN",
+                        "spring.thymeleaf.cache=true")
+                .run();
+        view = context.getBean(ThymeleafViewResolver.class).resolveViewName("products", Locale.ENGLISH);
+
+        products = new ArrayList<>(productCount);
+        for (int i = 0; i < productCount; i++)
+            products.add(new ProductSummary((long) i, "Product " + i, "Description of product " + i,
+                    Money.parse("9.99"), 100));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int render() throws Exception {
+        for (int i = 0; i < changedProductsPerRender; i++) {
+            final ProductSummary product = products.get(nextChangedProduct);
+            products.set(nextChangedProduct, new ProductSummary(product.getId(), product.getName(),
+                    product.getDescription(), product.getPrice(), product.getQuantity() - 1));
+            nextChangedProduct = (nextChangedProduct + 1) % productCount;
+        }
+
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/products");
+        request.setAttribute(DispatcherServlet.WEB_APPLICATION_CONTEXT_ATTRIBUTE, context);
+        final CsrfToken csrfToken = new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf", UUID.randomUUID().toString());
+        request.setAttribute(CsrfToken.class.getName(), csrfToken);
+        request.setAttribute(csrfToken.getParameterName(), csrfToken);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        final Map<String, Object> model = new HashMap<>();
+        model.put("products", products);
+        model.put("nextCursor", null);
+        model.put("pageSize", productCount);
+        view.render(model, request, response);
+        return response.getContentAsString().length();
+    }
+}
@@ -0,0 +1,81 @@
+package com.openclassrooms.shopmanager.product;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ProductSearchIndex} queries over a generated catalog, without any database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ProductSearchBenchmark {
+
+    private static final int VOCABULARY_SIZE = 20000;
+
+    @Param({"100000", "1000000"})
+    private int productCount;
+
+    private ProductSearchIndex searchIndex;
+    private String[] vocabulary;
+    private String twoTermQuery;
+    private String prefixQuery;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        vocabulary = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < VOCABULARY_SIZE; i++)
+            vocabulary[i] = randomWord(random);
+        // Word frequencies follow a Zipf-like law, the first words of the vocabulary being the most frequent
+        twoTermQuery = vocabulary[10] + " " + vocabulary[100];
+        prefixQuery = vocabulary[20] + " " + vocabulary[5].substring(0, 3);
+
+        searchIndex = new ProductSearchIndex(null);
+        for (long id = 1; id <= productCount; id++) {
+            final Product product = new Product();
+            product.setId(id);
+            product.setName(randomText(random, 3) + " " + Long.toString(id, 36));
+            product.setDescription(randomText(random, 5));
+            product.setDetails(randomText(random, 10));
+            searchIndex.add(product);
+        }
+    }
+
+    @Benchmark
+    public List<Long> rareTerm() {
+        return searchIndex.search("zz1", 20);
+    }
+
+    @Benchmark
+    public List<Long> twoTerms() {
+        return searchIndex.search(twoTermQuery, 20);
+    }
+
+    @Benchmark
+    public List<Long> termAndPrefix() {
+        return searchIndex.search(prefixQuery, 20);
+    }
+
+    private String randomText(Random random, int wordCount) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            final int rank = (int) Math.pow(VOCABULARY_SIZE, random.nextDouble()) - 1;
+            text.append(vocabulary[rank]).append(' ');
+        }
+        return text.toString();
+    }
+
+    private static String randomWord(Random random) {
+        final char[] letters = new char[4 + random.nextInt(6)];
+        for (int i = 0; i < letters.length; i++)
+            letters[i] = (char) ('a' + random.nextInt(26));
+        return new String(letters);
+    }
+}
@@ -0,0 +1,110 @@
+package com.openclassrooms.shopmanager.product;
+
+import com.openclassrooms.shopmanager.money.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ProductService#checkProductIsValid(ProductModel)} on a valid product and on the usual invalid ones,
+ * against the former validation, which parsed the numbers by catching {@link NumberFormatException}. Run with
+ * {@code -prof gc} to compare allocations as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProductValidationBenchmark {
+
+    @Param({"valid", "missingFields", "notANumber", "notPositive"})
+    private String product;
+
+    private ProductService productService;
+    private ProductModel productModel;
+    private ValidatedProduct validatedProduct;
+
+    @Setup
+    public void setUp() {
+        productService = new ProductService(null, null, null, null, null, new SimpleMeterRegistry());
+        validatedProduct = new ValidatedProduct();
+        productModel = new ProductModel();
+        productModel.setName("Echo Dot");
+        productModel.setDescription("(2nd Generation) - Black");
+        switch (product) {
+            case "valid":
+                productModel.setPrice("92.50");
+                productModel.setQuantity("10");
+                break;
+            case "missingFields":
+                productModel.setName("");
+                break;
+            case "notANumber":
+                productModel.setPrice("92,50");
+                productModel.setQuantity("ten");
+                break;
+            case "notPositive":
+                productModel.setPrice("-92.50");
+                productModel.setQuantity("0");
+                break;
+            default:
+                throw new IllegalArgumentException(product);
+        }
+    }
+
+    @Benchmark
+    public List<String> checkProductIsValid() {
+        return productService.checkProductIsValid(productModel);
+    }
+
+    @Benchmark
+    public ValidatedProduct validateProductReused() {
+        return productService.validateProduct(productModel, validatedProduct);
+    }
+
+    @Benchmark
+    public List<String> exceptionBasedValidation() {
+        final List<String> errors = new LinkedList<>();
+        if (productModel.getName() == null || productModel.getName().trim().isEmpty())
+            errors.add("product.MissingName");
+
+        if (productModel.getPrice() == null || productModel.getPrice().trim().isEmpty())
+            errors.add("product.MissingPrice");
+        else if (!isStringDouble(productModel.getPrice()))
+            errors.add("product.PriceNotANumber");
+        else if (Double.parseDouble(productModel.getPrice()) <= 0D
+                || !Money.of(Double.parseDouble(productModel.getPrice())).isPositive())
+            errors.add("product.PriceNotGreaterThanZero");
+
+        if (productModel.getQuantity() == null || productModel.getQuantity().trim().isEmpty())
+            errors.add("product.MissingQuantity");
+        else if (!isStringInteger(productModel.getQuantity()))
+            errors.add("product.QuantityNotAnInteger");
+        else if (Integer.valueOf(productModel.getQuantity()) <= 0)
+            errors.add("product.QuantityNotGreaterThanZero");
+
+        return errors;
+    }
+
+    private static boolean isStringDouble(String potentialDouble) {
+        try {
+            Double.parseDouble(potentialDouble);
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isStringInteger(String potentialInt) {
+        try {
+            Integer.parseInt(potentialInt);
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+        return true;
+    }
+}
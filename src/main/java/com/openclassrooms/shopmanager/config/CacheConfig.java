@@ -0,0 +1,98 @@
+package com.openclassrooms.shopmanager.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.openclassrooms.shopmanager.product.Product;
+import com.openclassrooms.shopmanager.product.ProductRowRenderer;
+import com.openclassrooms.shopmanager.product.ProductService;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    @Bean
+    public CacheManager cacheManager(@Value("${shop.cache.product.max-size:10000}") long productMaxSize,
+                                     @Value("${shop.cache.product.ttl-seconds:600}") long productTtlSeconds,
+                                     @Value("${shop.cache.listing.max-size:100}") long listingMaxSize,
+                                     @Value("${shop.cache.listing.ttl-seconds:60}") long listingTtlSeconds,
+                                     @Value("${shop.cache.rows.max-size:20000}") long rowsMaxSize,
+                                     @Value("${shop.cache.rows.ttl-seconds:3600}") long rowsTtlSeconds) {
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(Arrays.asList(
+                caffeineCache(ProductService.PRODUCT_CACHE, productMaxSize, productTtlSeconds),
+                caffeineCache(ProductService.PRODUCTS_CACHE, listingMaxSize, listingTtlSeconds),
+                caffeineCache(ProductService.ADMIN_PRODUCTS_CACHE, listingMaxSize, listingTtlSeconds),
+                caffeineCache(ProductRowRenderer.PRODUCT_ROWS_CACHE, rowsMaxSize, rowsTtlSeconds)
+        ));
+        return cacheManager;
+    }
+
+    /**
+     * Evictions are applied after the surrounding transaction commits, so that a rolled back checkout does not empty
+     * the cache and a value read before the commit cannot be cached again once the eviction is done.
+     */
+    private static Cache caffeineCache(String name, long maxSize, long ttlSeconds) {
+        return new TransactionAwareCacheDecorator(new CaffeineCache(name, Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build()));
+    }
+
+    /**
+     * Caches of the Hibernate second-level cache, created here with their bounds, so that Hibernate does not create
+     * unbounded ones. The update timestamps, which tell whether cached query results are stale, must never be evicted.
+     */
+    @Bean(destroyMethod = "close")
+    public javax.cache.CacheManager hibernateCacheManager(
+            @Value("${shop.cache.product.max-size:10000}") long productMaxSize,
+            @Value("${shop.cache.product.ttl-seconds:600}") long productTtlSeconds,
+            @Value("${shop.cache.listing.max-size:100}") long listingMaxSize,
+            @Value("${shop.cache.listing.ttl-seconds:60}") long listingTtlSeconds) {
+        final CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        // A cache manager of its own, which the other application contexts of the JVM, in tests, do not share
+        final javax.cache.CacheManager cacheManager = provider.getCacheManager(
+                URI.create("hibernate-" + UUID.randomUUID()), provider.getDefaultClassLoader());
+        cacheManager.createCache(Product.class.getName(), jcacheConfiguration(productMaxSize, productTtlSeconds));
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                jcacheConfiguration(listingMaxSize, listingTtlSeconds));
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                jcacheConfiguration(0, 0));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(javax.cache.CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    private static CaffeineConfiguration<Object, Object> jcacheConfiguration(long maxSize, long ttlSeconds) {
+        final CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        if (maxSize > 0)
+            configuration.setMaximumSize(OptionalLong.of(maxSize));
+        if (ttlSeconds > 0)
+            configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSeconds)));
+        return configuration;
+    }
+}
@@ -0,0 +1,30 @@
+package com.openclassrooms.shopmanager.config;
+
+import com.openclassrooms.shopmanager.product.CatalogEtagInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Conditional requests of the catalog pages. The ETag interceptor runs last, once the locale of the request is
+ * resolved, as it is part of the ETag.
+ */
+@Configuration
+public class HttpCacheConfig implements WebMvcConfigurer {
+
+    private CatalogEtagInterceptor catalogEtagInterceptor;
+
+    @Autowired
+    public HttpCacheConfig(CatalogEtagInterceptor catalogEtagInterceptor) {
+        this.catalogEtagInterceptor = catalogEtagInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(catalogEtagInterceptor)
+                .addPathPatterns("/", "/products", "/products/search", "/admin/products")
+                .order(Ordered.LOWEST_PRECEDENCE);
+    }
+}
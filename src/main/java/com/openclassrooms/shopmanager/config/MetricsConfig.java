@@ -0,0 +1,60 @@
+package com.openclassrooms.shopmanager.config;
+
+import com.openclassrooms.shopmanager.order.OrderPipeline;
+import com.openclassrooms.shopmanager.product.InventoryRetryPolicy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Publishes the counters of the {@link InventoryRetryPolicy} and the {@link OrderPipeline} as meters, next to the ones
+ * recorded by the services, under {@code /actuator/metrics}.
+ * <p>
+ * They are registered once the registry is configured rather than by a {@code MeterBinder} bean: binders are created
+ * while the registry is, and creating the pipeline then would hand the services a registry without its percentile
+ * settings.
+ */
+@Configuration
+public class MetricsConfig {
+
+    private static final List<String> PIPELINE_GAUGES =
+            Arrays.asList("queueDepth", "queueRemainingCapacity", "averageLatencyMicros", "maxLatencyMicros");
+
+    private MeterRegistry meterRegistry;
+
+    private InventoryRetryPolicy inventoryRetryPolicy;
+
+    private OrderPipeline orderPipeline;
+
+    @Autowired
+    public MetricsConfig(MeterRegistry meterRegistry, InventoryRetryPolicy inventoryRetryPolicy,
+                         OrderPipeline orderPipeline) {
+        this.meterRegistry = meterRegistry;
+        this.inventoryRetryPolicy = inventoryRetryPolicy;
+        this.orderPipeline = orderPipeline;
+    }
+
+    @PostConstruct
+    public void registerStats() {
+        for (String key : inventoryRetryPolicy.getStats().keySet())
+            FunctionCounter.builder("shop.inventory.retry." + key, inventoryRetryPolicy,
+                    policy -> policy.getStats().get(key))
+                    .register(meterRegistry);
+
+        for (String key : orderPipeline.getStats().keySet()) {
+            if (PIPELINE_GAUGES.contains(key))
+                Gauge.builder("shop.order.pipeline." + key, orderPipeline, pipeline -> pipeline.getStats().get(key))
+                        .register(meterRegistry);
+            else
+                FunctionCounter.builder("shop.order.pipeline." + key, orderPipeline,
+                        pipeline -> pipeline.getStats().get(key))
+                        .register(meterRegistry);
+        }
+    }
+}
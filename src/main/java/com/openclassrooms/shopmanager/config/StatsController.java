@@ -0,0 +1,113 @@
+package com.openclassrooms.shopmanager.config;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.openclassrooms.shopmanager.order.OrderPipeline;
+import com.openclassrooms.shopmanager.product.InventoryRetryPolicy;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exposes runtime statistics to administrators, as JSON.
+ */
+@RestController
+@RequestMapping("/admin/stats")
+public class StatsController {
+
+    private CacheManager cacheManager;
+
+    private InventoryRetryPolicy inventoryRetryPolicy;
+
+    private OrderPipeline orderPipeline;
+
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    public StatsController(CacheManager cacheManager, InventoryRetryPolicy inventoryRetryPolicy,
+                           OrderPipeline orderPipeline, EntityManagerFactory entityManagerFactory) {
+        this.cacheManager = cacheManager;
+        this.inventoryRetryPolicy = inventoryRetryPolicy;
+        this.orderPipeline = orderPipeline;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    /**
+     * @return hit, miss and eviction statistics of every cache, keyed by cache name
+     */
+    @GetMapping("/cache")
+    public Map<String, Map<String, Object>> getCacheStats() {
+        final Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (String cacheName : cacheManager.getCacheNames()) {
+            final Cache cache = cacheManager.getCache(cacheName);
+            if (cache != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache) {
+                final com.github.benmanes.caffeine.cache.Cache<?, ?> caffeineCache =
+                        (com.github.benmanes.caffeine.cache.Cache<?, ?>) cache.getNativeCache();
+                stats.put(cacheName, toMap(caffeineCache.stats(), caffeineCache.estimatedSize()));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return hit, miss and put counts of every region of the Hibernate second-level cache and of the query cache, keyed
+     * by region name
+     */
+    @GetMapping("/second-level-cache")
+    public Map<String, Map<String, Long>> getSecondLevelCacheStats() {
+        final Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        final Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        for (String regionName : statistics.getSecondLevelCacheRegionNames())
+            putRegionStats(stats, statistics.getCacheRegionStatistics(regionName));
+        putRegionStats(stats, statistics.getQueryRegionStatistics(
+                RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME));
+        return stats;
+    }
+
+    private static void putRegionStats(Map<String, Map<String, Long>> stats, CacheRegionStatistics regionStatistics) {
+        if (regionStatistics == null)
+            return;
+        final Map<String, Long> regionStats = new LinkedHashMap<>();
+        regionStats.put("hits", regionStatistics.getHitCount());
+        regionStats.put("misses", regionStatistics.getMissCount());
+        regionStats.put("puts", regionStatistics.getPutCount());
+        stats.put(regionStatistics.getRegionName(), regionStats);
+    }
+
+    /**
+     * @return contention and retry counters of the stock updates made by checkouts
+     */
+    @GetMapping("/inventory")
+    public Map<String, Long> getInventoryStats() {
+        return inventoryRetryPolicy.getStats();
+    }
+
+    /**
+     * @return queue depth, throughput and latency of the pipeline storing accepted orders
+     */
+    @GetMapping("/orders")
+    public Map<String, Long> getOrderPipelineStats() {
+        return orderPipeline.getStats();
+    }
+
+    private static Map<String, Object> toMap(CacheStats cacheStats, long size) {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size);
+        stats.put("hits", cacheStats.hitCount());
+        stats.put("misses", cacheStats.missCount());
+        stats.put("hitRate", cacheStats.hitRate());
+        stats.put("evictions", cacheStats.evictionCount());
+        stats.put("averageLoadPenaltyNanos", cacheStats.averageLoadPenalty());
+        return stats;
+    }
+}
@@ -0,0 +1,62 @@
+package com.openclassrooms.shopmanager.config;
+
+import org.apache.coyote.AbstractProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves every request on its own virtual thread instead of a thread of the Tomcat pool, so that requests blocked on
+ * JDBC calls no longer hold an OS thread each. Controllers and the repository calls they make run on the request
+ * thread, and streamed responses such as catalog exports on virtual threads too.
+ * <p>
+ * Enabled with the {@value #PROFILE} Spring profile, which needs Java 21 or later at runtime. The code is still
+ * compiled for Java 8, so the executor is looked up by reflection and startup fails on an older runtime rather than
+ * silently falling back to platform threads.
+ * <p>
+ * Experimental: on one CPU, it lowers the median latency but doubles the p99 against Tomcat's pool, for the same
+ * throughput (see the README).
+ */
+@Configuration
+@Profile(VirtualThreadConfig.PROFILE)
+public class VirtualThreadConfig implements WebMvcConfigurer {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    public static final String PROFILE = "virtual-threads";
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        final ExecutorService executor;
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("The " + PROFILE + " profile needs Java 21 or later, running on Java "
+                    + System.getProperty("java.version"));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads could not be created", e);
+        }
+        log.info("Requests are served on virtual threads");
+        return executor;
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadTomcatCustomizer() {
+        return factory -> factory.addConnectorCustomizers(connector ->
+                ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(virtualThreadExecutor()));
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new ConcurrentTaskExecutor(virtualThreadExecutor()));
+    }
+}
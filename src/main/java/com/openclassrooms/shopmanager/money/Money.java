@@ -0,0 +1,172 @@
+package com.openclassrooms.shopmanager.money;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.Objects;
+
+/**
+ * Immutable amount of money, held as a whole number of minor units of its currency (cents for US dollars). Sums and
+ * products are exact long arithmetic, without the rounding drift of {@code double} nor the allocations of
+ * {@link BigDecimal}. Operations throw an {@link ArithmeticException} on overflow, and an
+ * {@link IllegalArgumentException} when mixing currencies.
+ */
+public final class Money implements Comparable<Money>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Currency of the shop, in which prices are stored
+     */
+    public static final Currency DEFAULT_CURRENCY = Currency.getInstance("USD");
+
+    public static final Money ZERO = new Money(0, DEFAULT_CURRENCY);
+
+    private final long minorUnits;
+    private final Currency currency;
+
+    private Money(long minorUnits, Currency currency) {
+        this.minorUnits = minorUnits;
+        this.currency = Objects.requireNonNull(currency, "currency");
+    }
+
+    /**
+     * @param minorUnits amount in cents of the default currency
+     * @return the amount of money
+     */
+    public static Money ofMinor(long minorUnits) {
+        return ofMinor(minorUnits, DEFAULT_CURRENCY);
+    }
+
+    public static Money ofMinor(long minorUnits, Currency currency) {
+        return new Money(minorUnits, currency);
+    }
+
+    /**
+     * @param amount amount in the default currency, rounded half even to the cent
+     * @return the amount of money
+     */
+    public static Money of(BigDecimal amount) {
+        return of(amount, DEFAULT_CURRENCY);
+    }
+
+    public static Money of(BigDecimal amount, Currency currency) {
+        final int fractionDigits = fractionDigits(currency);
+        return new Money(amount.setScale(fractionDigits, RoundingMode.HALF_EVEN).movePointRight(fractionDigits)
+                .longValueExact(), currency);
+    }
+
+    /**
+     * @param amount amount in the default currency, taken as its shortest decimal representation and rounded half
+     *               even to the cent
+     * @return the amount of money
+     */
+    public static Money of(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount))
+            throw new ArithmeticException("Not a finite amount: " + amount);
+        return of(BigDecimal.valueOf(amount));
+    }
+
+    /**
+     * @param amount decimal amount in the default currency, such as {@code "92.50"}
+     * @return the amount of money
+     * @throws NumberFormatException if the amount is not a decimal number
+     */
+    public static Money parse(String amount) {
+        return of(new BigDecimal(amount.trim()));
+    }
+
+    public Money plus(Money other) {
+        checkSameCurrency(other);
+        return new Money(Math.addExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public Money minus(Money other) {
+        checkSameCurrency(other);
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public Money times(long factor) {
+        return new Money(Math.multiplyExact(minorUnits, factor), currency);
+    }
+
+    /**
+     * @param divisor number to divide by, not zero
+     * @return this amount divided by the divisor, rounded half even to the minor unit
+     */
+    public Money dividedBy(long divisor) {
+        long quotient = minorUnits / divisor;
+        final long remainder = minorUnits % divisor;
+        if (remainder != 0) {
+            final long twiceRemainder = Math.abs(remainder) * 2;
+            final long absoluteDivisor = Math.abs(divisor);
+            if (twiceRemainder > absoluteDivisor || (twiceRemainder == absoluteDivisor && (quotient & 1) != 0))
+                quotient += Long.signum(minorUnits) * Long.signum(divisor);
+        }
+        return new Money(quotient, currency);
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    public boolean isZero() {
+        return minorUnits == 0;
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return the amount as a decimal, with as many fraction digits as the currency uses. Amounts are written to JSON
+     * as this decimal, in the currency of the shop
+     */
+    @JsonValue
+    public BigDecimal getAmount() {
+        return BigDecimal.valueOf(minorUnits, fractionDigits(currency));
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        checkSameCurrency(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Money money = (Money) o;
+        return minorUnits == money.minorUnits && currency.equals(money.currency);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(minorUnits, currency);
+    }
+
+    /**
+     * @return the decimal amount without currency, such as {@code "92.50"}
+     */
+    @Override
+    public String toString() {
+        return getAmount().toPlainString();
+    }
+
+    private void checkSameCurrency(Money other) {
+        if (!currency.equals(other.currency))
+            throw new IllegalArgumentException("Cannot combine " + currency + " with " + other.currency);
+    }
+
+    private static int fractionDigits(Currency currency) {
+        return Math.max(currency.getDefaultFractionDigits(), 0);
+    }
+}
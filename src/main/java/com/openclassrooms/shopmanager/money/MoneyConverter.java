@@ -0,0 +1,26 @@
+package com.openclassrooms.shopmanager.money;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.math.BigDecimal;
+
+/**
+ * Stores {@link Money} as a decimal column in the default currency, so that amounts stay readable in the database.
+ */
+@Converter
+public class MoneyConverter implements AttributeConverter<Money, BigDecimal> {
+
+    @Override
+    public BigDecimal convertToDatabaseColumn(Money money) {
+        if (money == null)
+            return null;
+        if (!money.getCurrency().equals(Money.DEFAULT_CURRENCY))
+            throw new IllegalArgumentException("Only amounts in " + Money.DEFAULT_CURRENCY + " can be stored");
+        return money.getAmount();
+    }
+
+    @Override
+    public Money convertToEntityAttribute(BigDecimal amount) {
+        return amount != null ? Money.of(amount) : null;
+    }
+}
@@ -1,23 +1,46 @@
 package com.openclassrooms.shopmanager.order;
 
+import com.openclassrooms.shopmanager.money.Money;
 import com.openclassrooms.shopmanager.product.Product;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
-
+import java.util.Map;
+
+/**
+ * Shopping cart of a single session. All operations are synchronized on the cart, so that concurrent requests from
+ * the same session cannot corrupt its lines.
+ * <p>
+ * Lines are keyed by product id in insertion order, so adding, removing and finding a product take constant time
+ * whatever the size of the cart, while the lines are still listed in the order the products were added.
+ * <p>
+ * The total value and quantity are kept up to date as lines are added, removed or change quantity, so reading them
+ * takes constant time and allocates nothing. The total value is summed exactly, in minor units of the currency.
+ */
 public class Cart {
 
-    private List<CartLine> cartLineList = new ArrayList<>();
+    private final Map<Long, CartLine> cartLines = new LinkedHashMap<>();
+
+    private Money totalValue = Money.ZERO;
+    private int totalQuantity;
+    private Money averageValue = Money.ZERO;
 
     /**
      *
-     * @return the actual cartline list
+     * @return a read-only snapshot of the cartline list, in the order the products were added
      */
-    public List<CartLine> getCartLineList() {
-//        return new ArrayList<>();
-        // TO REMOVE
-        return cartLineList;
+    public synchronized List<CartLine> getCartLineList() {
+        return Collections.unmodifiableList(new ArrayList<>(cartLines.values()));
+    }
+
+    /**
+     * @return true if the cart has no line
+     */
+    public synchronized boolean isEmpty() {
+        return cartLines.isEmpty();
     }
 
     /**
@@ -25,19 +48,21 @@ public class Cart {
      * @param product getProductById to be added
      * @param quantity the quantity
      */
-    public void addItem(Product product, int quantity) {
+    public synchronized void addItem(Product product, int quantity) {
 
-        Optional<CartLine> cartLine = cartLineList.stream().filter(cl -> cl.getProduct().equals(product)).findFirst();
+        CartLine cartLine = cartLines.get(product.getId());
 
-        if (cartLine.isPresent()){
-            cartLine.get().setQuantity(cartLine.get().getQuantity() + quantity);
+        if (cartLine != null){
+            cartLine.setQuantity(cartLine.getQuantity() + quantity);
 
         }else {
             CartLine newCartLine = new CartLine();
             newCartLine.setOrderLineID((int) (System.currentTimeMillis() % Integer.MAX_VALUE));
             newCartLine.setQuantity(quantity);
             newCartLine.setProduct(product);
-            cartLineList.add(newCartLine);
+            cartLines.put(product.getId(), newCartLine);
+            newCartLine.setCart(this);
+            updateTotals(newCartLine, quantity);
         }
     }
 
@@ -45,71 +70,99 @@ public class Cart {
      * Removes a getProductById form the cart
      * @param product the getProductById to be removed
      */
-    public void removeLine(Product product) {
-        getCartLineList().removeIf(l -> l.getProduct().getId().equals(product.getId()));
+    public synchronized void removeLine(Product product) {
+        CartLine cartLine = cartLines.remove(product.getId());
+        if (cartLine != null) {
+            cartLine.setCart(null);
+            updateTotals(cartLine, -cartLine.getQuantity());
+        }
     }
 
+    /**
+     * Called by a line of this cart when its quantity changes, with the lock of the cart held.
+     */
+    void quantityChanged(CartLine cartLine, int quantityDelta) {
+        updateTotals(cartLine, quantityDelta);
+    }
+
+    private void updateTotals(CartLine cartLine, int quantityDelta) {
+        totalValue = totalValue.plus(cartLine.getProduct().getPrice().times(quantityDelta));
+        totalQuantity += quantityDelta;
+        averageValue = totalQuantity > 0 ? totalValue.dividedBy(totalQuantity) : Money.ZERO;
+    }
 
     /**
      * @return total value of a cart
      */
-    public double getTotalValue()
+    public synchronized Money getTotalValue()
     {
-        // TODO implement the method
-//        return 0.0;
-
-        // To REMOVE
-        return getCartLineList().stream().mapToDouble(CartLine::getSubtotal).sum();
-
+        return totalValue;
     }
 
     /**
-     * @return Get average value of a cart
+     * @return total number of items in the cart
      */
-    public double getAverageValue()
+    public synchronized int getTotalQuantity()
     {
-        // TODO implement the method
-//        return 0.0;
-
-        int totalQuantity = getCartLineList().stream().mapToInt(CartLine::getQuantity).sum();
+        return totalQuantity;
+    }
 
-        if (totalQuantity > 0) {
-            return getTotalValue() / totalQuantity;
-        } else {
-            return 0;
-        }
+    /**
+     * @return Get average value of a cart, rounded to the cent
+     */
+    public synchronized Money getAverageValue()
+    {
+        return averageValue;
     }
 
     /**
      * @param productId the getProductById id to search for
-     * @return getProductById in the cart if it finds it
+     * @return getProductById in the cart if it finds it, null otherwise
      */
-    public Product findProductInCartLines(Long productId)
+    public synchronized Product findProductInCartLines(Long productId)
     {
-        // TODO implement the method
-//        return null;
+        CartLine cartLine = cartLines.get(productId);
+        return cartLine != null ? cartLine.getProduct() : null;
+    }
 
-        // TO REMOVE
-       return cartLineList.stream().filter(cl -> cl.getProduct().getId().equals(productId)).findFirst().get().getProduct();
+    /**
+     * @param productId id of the product to search for
+     * @return quantity of the product in the cart, 0 if it is not in the cart
+     */
+    public synchronized int getQuantity(Long productId)
+    {
+        CartLine cartLine = cartLines.get(productId);
+        return cartLine != null ? cartLine.getQuantity() : 0;
     }
 
     /**
+     * Walks the lines up to the requested one, prefer {@link #getCartLineList()} to go through all the lines.
      *
      * @param index index of the cartLine
      * @return CartLine in that index
      */
-    public CartLine getCartLineByIndex(int index)
+    public synchronized CartLine getCartLineByIndex(int index)
     {
-        return getCartLineList().get(index);
+        if (index < 0 || index >= cartLines.size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + cartLines.size());
+
+        Iterator<CartLine> iterator = cartLines.values().iterator();
+        for (int i = 0; i < index; i++)
+            iterator.next();
+        return iterator.next();
     }
 
     /**
      * Clears a the cart of all added products
      */
-    public void clear()
+    public synchronized void clear()
     {
-        List<CartLine> cartLines = getCartLineList();
+        for (CartLine cartLine : cartLines.values())
+            cartLine.setCart(null);
         cartLines.clear();
+        totalValue = Money.ZERO;
+        totalQuantity = 0;
+        averageValue = Money.ZERO;
     }
 }
 
@@ -1,5 +1,6 @@
 package com.openclassrooms.shopmanager.order;
 
+import com.openclassrooms.shopmanager.money.Money;
 import com.openclassrooms.shopmanager.product.Product;
 
 public class CartLine {
@@ -7,9 +8,11 @@ public class CartLine {
    private int orderLineID;
    private Product product;
    private int quantity;
+   // Cart whose totals follow the quantity of this line, if any
+   private Cart cart;
 
-   public double getSubtotal() {
-       return quantity * product.getPrice();
+   public Money getSubtotal() {
+       return product.getPrice().times(quantity);
    }
 
    public int getOrderLineID() {
@@ -33,6 +36,20 @@ public class CartLine {
    }
 
    public void setQuantity(int quantity) {
-       this.quantity = quantity;
+       Cart owner = cart;
+       if (owner == null) {
+           this.quantity = quantity;
+           return;
+       }
+       // Same lock as the cart operations, so the cart totals cannot miss a concurrent change
+       synchronized (owner) {
+           int previousQuantity = this.quantity;
+           this.quantity = quantity;
+           owner.quantityChanged(this, quantity - previousQuantity);
+       }
+   }
+
+   void setCart(Cart cart) {
+       this.cart = cart;
    }
 }
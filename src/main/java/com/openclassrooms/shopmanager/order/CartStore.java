@@ -0,0 +1,127 @@
+package com.openclassrooms.shopmanager.order;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds one cart per HTTP session. Carts that have not been accessed for the configured idle timeout are evicted
+ * periodically, and the number of live carts is bounded: once the bound is reached, idle carts are evicted first and
+ * then the least recently used one.
+ */
+@Component
+public class CartStore {
+
+    /**
+     * Key of the cart used when there is no HTTP request bound to the current thread.
+     */
+    static final String DEFAULT_CART_KEY = "default";
+
+    private final ConcurrentMap<String, CartHolder> carts = new ConcurrentHashMap<>();
+
+    private final int maxCarts;
+    private final long idleTimeoutMillis;
+
+    @Autowired
+    public CartStore(@Value("${shop.cart.max-carts:10000}") int maxCarts,
+                     @Value("${shop.cart.idle-timeout-minutes:30}") long idleTimeoutMinutes) {
+        this.maxCarts = maxCarts;
+        this.idleTimeoutMillis = TimeUnit.MINUTES.toMillis(idleTimeoutMinutes);
+    }
+
+    /**
+     * @return the cart of the session bound to the current request, or the default cart outside of a request
+     */
+    public Cart getCurrentCart() {
+        return getCart(getCurrentCartKey());
+    }
+
+    /**
+     * @return key of the cart of the session bound to the current request, or of the default cart outside of a request
+     */
+    public String getCurrentCartKey() {
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes != null ? attributes.getSessionId() : DEFAULT_CART_KEY;
+    }
+
+    /**
+     * Returns the cart associated with the given key, creating it if it does not exist yet.
+     *
+     * @param cartKey key of the cart, usually the session id
+     * @return the cart associated with the key
+     */
+    public Cart getCart(String cartKey) {
+        final long now = System.currentTimeMillis();
+        CartHolder holder = carts.get(cartKey);
+        if (holder == null) {
+            if (carts.size() >= maxCarts)
+                makeRoom(now);
+            holder = carts.computeIfAbsent(cartKey, key -> new CartHolder());
+        }
+        holder.lastAccess = now;
+        return holder.cart;
+    }
+
+    /**
+     * Drops the cart associated with the given key, if any.
+     *
+     * @param cartKey key of the cart to drop
+     */
+    public void removeCart(String cartKey) {
+        carts.remove(cartKey);
+    }
+
+    /**
+     * @return number of carts currently held in memory
+     */
+    public int size() {
+        return carts.size();
+    }
+
+    @Scheduled(fixedDelayString = "${shop.cart.eviction-interval-ms:60000}")
+    public void evictIdleCarts() {
+        evictIdleCarts(System.currentTimeMillis());
+    }
+
+    /**
+     * Removes every cart that has not been accessed since {@code now - idleTimeout}.
+     *
+     * @param now current time in milliseconds
+     * @return number of evicted carts
+     */
+    int evictIdleCarts(long now) {
+        final long threshold = now - idleTimeoutMillis;
+        int evicted = 0;
+        for (Map.Entry<String, CartHolder> entry : carts.entrySet()) {
+            if (entry.getValue().lastAccess <= threshold && carts.remove(entry.getKey(), entry.getValue()))
+                evicted++;
+        }
+        return evicted;
+    }
+
+    private void makeRoom(long now) {
+        if (evictIdleCarts(now) > 0)
+            return;
+
+        Map.Entry<String, CartHolder> oldest = null;
+        for (Map.Entry<String, CartHolder> entry : carts.entrySet()) {
+            if (oldest == null || entry.getValue().lastAccess < oldest.getValue().lastAccess)
+                oldest = entry;
+        }
+        if (oldest != null)
+            carts.remove(oldest.getKey(), oldest.getValue());
+    }
+
+    private static class CartHolder {
+        private final Cart cart = new Cart();
+        private volatile long lastAccess;
+    }
+}
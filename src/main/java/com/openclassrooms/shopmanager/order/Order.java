@@ -1,15 +1,24 @@
 package com.openclassrooms.shopmanager.order;
 
+import javax.persistence.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
+@Entity
+@Table(name = "orders", indexes = @Index(name = "idx_orders_date", columnList = "order_date, id"))
 public class Order {
 
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_seq")
+    @SequenceGenerator(name = "order_seq", sequenceName = "order_seq", allocationSize = 50)
     private Long id;
 
-    private List<CartLine> lines;
+    @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
+    private List<OrderLine> lines = new ArrayList<>();
 
-    private LocalDate date = LocalDate.now();
+    @Column(name = "order_date", nullable = false)
+    private LocalDate date;
 
     private String name;
 
@@ -29,11 +38,12 @@ public class Order {
         this.id = id;
     }
 
-    public List<CartLine> getLines() {
+    public List<OrderLine> getLines() {
         return lines;
     }
 
-    public void setLines(List<CartLine> lines) {
+    public void setLines(List<OrderLine> lines) {
+        lines.forEach(line -> line.setOrder(this));
         this.lines = lines;
     }
 
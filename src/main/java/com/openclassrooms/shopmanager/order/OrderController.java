@@ -1,9 +1,12 @@
 package com.openclassrooms.shopmanager.order;
 
+import com.openclassrooms.shopmanager.product.InsufficientStockException;
+import com.openclassrooms.shopmanager.product.InventoryContentionException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
+import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
@@ -19,6 +22,16 @@ public class OrderController {
         this.orderService = orderService;
     }
 
+    /**
+     * Binds only the shipping details of the checkout form, the id, date and lines of an order being set on the server.
+     * The form posts the name as {@code Name}.
+     */
+    @InitBinder("order")
+    public void initOrderBinder(WebDataBinder binder)
+    {
+        binder.setAllowedFields("name", "Name", "address", "city", "zip", "country");
+    }
+
     @GetMapping("/order/cart")
     public String getCart(Model model)
     {
@@ -60,10 +73,17 @@ public class OrderController {
         }
 
         if (!result.hasErrors()) {
-            orderService.createOrder(order);
-            return "orderCompleted";
-        } else {
-            return "order";
+            try {
+                orderService.placeOrder(order);
+                return "orderCompleted";
+            } catch (InsufficientStockException e) {
+                result.reject("cart.insufficientStock");
+            } catch (InventoryContentionException e) {
+                result.reject("cart.contention");
+            } catch (OrderQueueFullException e) {
+                result.reject("cart.busy");
+            }
         }
+        return "order";
     }
 }
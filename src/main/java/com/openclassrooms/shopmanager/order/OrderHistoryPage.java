@@ -0,0 +1,34 @@
+package com.openclassrooms.shopmanager.order;
+
+import java.util.List;
+
+/**
+ * A window of the order history, most recent orders first, along with the cursor to pass to get the following window.
+ */
+public class OrderHistoryPage {
+
+    private final List<OrderSummary> orders;
+    private final String nextCursor;
+    private final int size;
+
+    public OrderHistoryPage(List<OrderSummary> orders, String nextCursor, int size) {
+        this.orders = orders;
+        this.nextCursor = nextCursor;
+        this.size = size;
+    }
+
+    public List<OrderSummary> getOrders() {
+        return orders;
+    }
+
+    /**
+     * @return cursor to pass to get the next page, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
@@ -1,8 +1,8 @@
 package com.openclassrooms.shopmanager.order;
 
+import com.openclassrooms.shopmanager.money.Money;
+import com.openclassrooms.shopmanager.money.MoneyConverter;
 import com.openclassrooms.shopmanager.product.Product;
-import org.hibernate.annotations.OnDelete;
-import org.hibernate.annotations.OnDeleteAction;
 
 import javax.persistence.*;
 
@@ -10,16 +10,41 @@ import javax.persistence.*;
 public class OrderLine {
 
     @Id
-    @GeneratedValue(strategy= GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_line_seq")
+    @SequenceGenerator(name = "order_line_seq", sequenceName = "order_line_seq", allocationSize = 50)
     private Long id;
 
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "orderId", nullable = false)
+    private Order order;
+
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "productId", nullable = false)
-    @OnDelete(action = OnDeleteAction.CASCADE)
     private Product product;
 
     private Integer quantity;
 
+    /**
+     * Unit price of the product when the order was placed
+     */
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 19, scale = 2)
+    private Money price;
+
+    public OrderLine() {
+    }
+
+    /**
+     * Creates an order line holding the product, quantity and current price of a cart line.
+     *
+     * @param cartLine cart line to copy
+     */
+    public OrderLine(CartLine cartLine) {
+        this.product = cartLine.getProduct();
+        this.quantity = cartLine.getQuantity();
+        this.price = cartLine.getProduct().getPrice();
+    }
+
     public Long getId() {
         return id;
     }
@@ -28,6 +53,14 @@ public class OrderLine {
         this.id = id;
     }
 
+    public Order getOrder() {
+        return order;
+    }
+
+    public void setOrder(Order order) {
+        this.order = order;
+    }
+
     public Product getProduct() {
         return product;
     }
@@ -43,4 +76,12 @@ public class OrderLine {
     public void setQuantity(Integer quantity) {
         this.quantity = quantity;
     }
+
+    public Money getPrice() {
+        return price;
+    }
+
+    public void setPrice(Money price) {
+        this.price = price;
+    }
 }
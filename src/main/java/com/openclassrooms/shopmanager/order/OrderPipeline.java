@@ -0,0 +1,308 @@
+package com.openclassrooms.shopmanager.order;
+
+import com.openclassrooms.shopmanager.product.InsufficientStockException;
+import com.openclassrooms.shopmanager.product.InventoryRetryPolicy;
+import com.openclassrooms.shopmanager.product.ProductService;
+import com.openclassrooms.shopmanager.product.StockReservationLedger;
+import com.openclassrooms.shopmanager.report.SalesReportService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Stores accepted orders and removes their quantities from the stock in the background, so that checkouts do not wait
+ * for the database. Orders wait in a bounded queue, drained by a fixed number of workers. Each worker takes every
+ * order waiting, up to the batch size, and stores them in a single transaction: the orders are inserted in JDBC
+ * batches, and the stock of each product and the sales rollups are updated once for the whole batch.
+ * <p>
+ * When the queue is full, {@link #submit(Order, List, String)} waits a short time for room, then gives up, so that a
+ * database slower than the incoming orders slows down checkouts instead of piling up orders in memory.
+ * <p>
+ * Accepted orders already hold their units in the {@link StockReservationLedger}, so they normally cannot fail for lack
+ * of stock. When a batch fails anyway, its orders are stored one by one, so that one failing order does not take the
+ * others down with it. An order that still fails is logged and its units are released: the customer was already shown
+ * the order as completed, and it is lost. The pipeline is therefore off unless {@code shop.order.pipeline.enabled} is
+ * set.
+ * <p>
+ * The workers are started once the application context is refreshed, and stopped, after storing the orders still
+ * queued, when it is closed.
+ */
+@Component
+public class OrderPipeline implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(OrderPipeline.class);
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final OrderRepository orderRepository;
+    private final ProductService productService;
+    private final StockReservationLedger reservationLedger;
+    private final InventoryRetryPolicy inventoryRetryPolicy;
+    private final SalesReportService salesReportService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final BlockingQueue<PendingOrder> queue;
+    private final int batchSize;
+    private final long offerTimeoutMillis;
+    private final int workerCount;
+    private ExecutorService workers;
+    private volatile boolean running;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    @Autowired
+    public OrderPipeline(OrderRepository orderRepository, ProductService productService,
+                         StockReservationLedger reservationLedger, InventoryRetryPolicy inventoryRetryPolicy,
+                         SalesReportService salesReportService, PlatformTransactionManager transactionManager,
+                         @Value("${shop.order.pipeline.enabled:false}") boolean enabled,
+                         @Value("${shop.order.pipeline.queue-capacity:1000}") int queueCapacity,
+                         @Value("${shop.order.pipeline.workers:2}") int workerCount,
+                         @Value("${shop.order.pipeline.batch-size:50}") int batchSize,
+                         @Value("${shop.order.pipeline.offer-timeout-ms:200}") long offerTimeoutMillis) {
+        this.orderRepository = orderRepository;
+        this.productService = productService;
+        this.reservationLedger = reservationLedger;
+        this.inventoryRetryPolicy = inventoryRetryPolicy;
+        this.salesReportService = salesReportService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Starts accepting orders, and the workers that store them if the pipeline is enabled.
+     */
+    @Override
+    public void start() {
+        running = true;
+        if (enabled && workerCount > 0) {
+            workers = Executors.newFixedThreadPool(workerCount, new CustomizableThreadFactory("order-pipeline-"));
+            for (int i = 0; i < workerCount; i++)
+                workers.execute(this::work);
+        }
+    }
+
+    /**
+     * Stops accepting orders, and waits for the workers to store the orders already queued.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        if (workers == null)
+            return;
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS))
+                log.warn("Order pipeline stopped with {} orders still queued", queue.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return true if checkouts should go through the pipeline, false if they store their order themselves
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues an order to be stored with the given lines, waiting a short time for room if the queue is full.
+     *
+     * @param order     order to store, which must not be modified by the caller afterwards
+     * @param cartLines lines of the order
+     * @param holder    key under which the units of the order are held in the {@link StockReservationLedger}, turned
+     *                  into stock decrements once the order is stored
+     * @return true if the order was queued, false if there was no room for it
+     */
+    public boolean submit(Order order, List<CartLine> cartLines, String holder) {
+        final PendingOrder pendingOrder = new PendingOrder(order, cartLines, holder);
+        try {
+            if (running && queue.offer(pendingOrder, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                accepted.increment();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejected.increment();
+        return false;
+    }
+
+    private void work() {
+        final List<PendingOrder> batch = new ArrayList<>(batchSize);
+        // Orders still queued at shutdown are stored before the workers stop
+        while (running || !queue.isEmpty()) {
+            try {
+                final PendingOrder first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Order pipeline worker failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Stores the orders waiting in the queue, up to the batch size, on the calling thread.
+     *
+     * @return number of orders taken from the queue
+     */
+    int processBatch() {
+        final List<PendingOrder> batch = new ArrayList<>(batchSize);
+        queue.drainTo(batch, batchSize);
+        if (!batch.isEmpty())
+            process(batch);
+        return batch.size();
+    }
+
+    private void process(List<PendingOrder> batch) {
+        batches.increment();
+        try {
+            store(batch);
+            batch.forEach(this::completed);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                failed(batch.get(0), e);
+                return;
+            }
+            log.warn("Batch of {} orders failed, storing them one by one: {}", batch.size(), e.toString());
+            for (PendingOrder pendingOrder : batch) {
+                try {
+                    store(Collections.singletonList(pendingOrder));
+                    completed(pendingOrder);
+                } catch (RuntimeException orderException) {
+                    failed(pendingOrder, orderException);
+                }
+            }
+        }
+    }
+
+    private void store(List<PendingOrder> batch) {
+        final Map<Long, Integer> quantitiesByProductId = new HashMap<>();
+        for (PendingOrder pendingOrder : batch)
+            pendingOrder.quantitiesByProductId.forEach((productId, quantity) ->
+                    quantitiesByProductId.merge(productId, quantity, Integer::sum));
+
+        final List<Order> orders = new ArrayList<>(batch.size());
+        for (PendingOrder pendingOrder : batch)
+            orders.add(pendingOrder.order);
+
+        inventoryRetryPolicy.execute(() -> transactionTemplate.execute(status -> {
+            for (PendingOrder pendingOrder : batch) {
+                final Order order = pendingOrder.order;
+                // A rolled back attempt may have assigned ids that were never stored
+                order.setId(null);
+                order.setLines(pendingOrder.cartLines.stream().map(OrderLine::new).collect(Collectors.toList()));
+                order.setDate(LocalDate.now());
+                orderRepository.save(order);
+            }
+            // Write the orders before the stock updates, which bypass the persistence context
+            orderRepository.flush();
+            productService.updateProductQuantities(quantitiesByProductId);
+            salesReportService.recordOrders(orders);
+            return null;
+        }));
+    }
+
+    private void completed(PendingOrder pendingOrder) {
+        reservationLedger.commit(pendingOrder.holder, pendingOrder.quantitiesByProductId);
+        processed.increment();
+        final long latency = System.nanoTime() - pendingOrder.acceptedAt;
+        totalLatencyNanos.add(latency);
+        maxLatencyNanos.accumulate(latency);
+    }
+
+    private void failed(PendingOrder pendingOrder, RuntimeException cause) {
+        for (Long productId : pendingOrder.quantitiesByProductId.keySet())
+            reservationLedger.release(pendingOrder.holder, productId);
+        if (cause instanceof InsufficientStockException) {
+            // The stock changed behind the ledger, which reads it again on the next hold
+            reservationLedger.forget(((InsufficientStockException) cause).getProductId());
+        }
+        failed.increment();
+        log.error("Accepted order of {} for {} could not be stored", pendingOrder.order.getName(),
+                pendingOrder.quantitiesByProductId, cause);
+    }
+
+    /**
+     * @return number of orders waiting and room left in the queue, counters of accepted, rejected, stored and failed
+     * orders and of batches, and the average and maximum time between the acceptance and the storage of an order
+     */
+    public Map<String, Long> getStats() {
+        final long processedCount = processed.sum();
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", (long) queue.size());
+        stats.put("queueRemainingCapacity", (long) queue.remainingCapacity());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("processed", processedCount);
+        stats.put("failed", failed.sum());
+        stats.put("batches", batches.sum());
+        stats.put("averageLatencyMicros",
+                processedCount > 0 ? TimeUnit.NANOSECONDS.toMicros(totalLatencyNanos.sum() / processedCount) : 0);
+        stats.put("maxLatencyMicros", TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get()));
+        return stats;
+    }
+
+    private static class PendingOrder {
+        private final Order order;
+        private final List<CartLine> cartLines;
+        private final String holder;
+        private final Map<Long, Integer> quantitiesByProductId = new LinkedHashMap<>();
+        private final long acceptedAt = System.nanoTime();
+
+        private PendingOrder(Order order, List<CartLine> cartLines, String holder) {
+            this.order = order;
+            this.cartLines = cartLines;
+            this.holder = holder;
+            for (CartLine cartLine : cartLines)
+                quantitiesByProductId.merge(cartLine.getProduct().getId(), cartLine.getQuantity(), Integer::sum);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.openclassrooms.shopmanager.order;
+
+/**
+ * Thrown when an order cannot be accepted because the {@link OrderPipeline} has no room left for it. Nothing is stored
+ * and the cart is left untouched, so the order can be placed again a moment later.
+ */
+public class OrderQueueFullException extends RuntimeException {
+
+    public OrderQueueFullException() {
+        super("Too many orders waiting to be stored");
+    }
+}
@@ -1,21 +1,29 @@
 package com.openclassrooms.shopmanager.order;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.util.ArrayList;
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
-public class OrderRepository {
-
-    private List<Order> orders = new ArrayList<>();
+public interface OrderRepository extends JpaRepository<Order, Long> {
 
     /**
-     * Saves an order
+     * Keyset pagination over the orders of a date range, most recent first, returning only the listed columns. Orders
+     * are read from the index on (date, id) starting at the cursor, so a page costs the same whatever its position.
+     * The pageable only limits the number of rows, it must always request the first page so that no OFFSET is used.
      *
-     * @param order order to be saved
+     * @param from       first day of the range
+     * @param beforeDate day of the last order of the previous page, or the last day of the range
+     * @param beforeId   id of the last order of the previous page, or {@link Long#MAX_VALUE}
      */
-    public void save(Order order) {
-        orders.add(order);
-    }
+    @Query("SELECT new com.openclassrooms.shopmanager.order.OrderSummary(o.id, o.date, o.name, o.city, o.country) " +
+            "FROM Order o WHERE o.date >= :from AND o.date <= :beforeDate " +
+            "AND (o.date < :beforeDate OR o.id < :beforeId) ORDER BY o.date DESC, o.id DESC")
+    List<OrderSummary> findSummariesBefore(@Param("from") LocalDate from, @Param("beforeDate") LocalDate beforeDate,
+                                           @Param("beforeId") Long beforeId, Pageable pageable);
 }
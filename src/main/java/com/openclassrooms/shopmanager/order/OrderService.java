@@ -1,65 +1,315 @@
 package com.openclassrooms.shopmanager.order;
 
+import com.openclassrooms.shopmanager.product.InsufficientStockException;
+import com.openclassrooms.shopmanager.product.InventoryContentionException;
+import com.openclassrooms.shopmanager.product.InventoryRetryPolicy;
 import com.openclassrooms.shopmanager.product.Product;
 import com.openclassrooms.shopmanager.product.ProductService;
+import com.openclassrooms.shopmanager.product.StockReservationLedger;
+import com.openclassrooms.shopmanager.report.SalesReportService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.LinkedList;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 
 @Service
 public class OrderService {
 
+    public static final int MAX_HISTORY_PAGE_SIZE = 500;
+
+    private static final String DIRECT_CHECKOUT = "direct";
+    private static final String PIPELINE_CHECKOUT = "pipeline";
+
     private OrderRepository orderRepository;
     private ProductService productService;
+    private CartStore cartStore;
+    private StockReservationLedger reservationLedger;
+    private InventoryRetryPolicy inventoryRetryPolicy;
+    private TransactionTemplate transactionTemplate;
+    private OrderPipeline orderPipeline;
+    private SalesReportService salesReportService;
+    private MeterRegistry meterRegistry;
+
+    private final AtomicLong submittedOrders = new AtomicLong();
 
-    private Cart cart = new Cart();
+    private final Timer addedToCartTimer;
+    private final Timer rejectedFromCartTimer;
+    private final Timer removeFromCartTimer;
+    private final DistributionSummary cartSize;
 
     @Autowired
-    public OrderService(OrderRepository orderRepository, ProductService productService) {
+    public OrderService(OrderRepository orderRepository, ProductService productService, CartStore cartStore,
+                        StockReservationLedger reservationLedger, InventoryRetryPolicy inventoryRetryPolicy,
+                        PlatformTransactionManager transactionManager, OrderPipeline orderPipeline,
+                        SalesReportService salesReportService, MeterRegistry meterRegistry) {
         this.orderRepository = orderRepository;
         this.productService = productService;
+        this.cartStore = cartStore;
+        this.reservationLedger = reservationLedger;
+        this.inventoryRetryPolicy = inventoryRetryPolicy;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.orderPipeline = orderPipeline;
+        this.salesReportService = salesReportService;
+        this.meterRegistry = meterRegistry;
+
+        addedToCartTimer = cartTimer("shop.cart.add", "added");
+        rejectedFromCartTimer = cartTimer("shop.cart.add", "rejected");
+        removeFromCartTimer = cartTimer("shop.cart.remove", "removed");
+        cartSize = DistributionSummary.builder("shop.cart.size")
+                .description("Units in the cart at checkout")
+                .baseUnit("items")
+                .register(meterRegistry);
+    }
+
+    private Timer cartTimer(String name, String outcome) {
+        return Timer.builder(name)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
     }
 
+    /**
+     * Adds one unit of a product to the cart, and holds it in the {@link StockReservationLedger} until checkout.
+     *
+     * @param productId id of the product to add
+     * @return true if the product was added, false if it does not exist or all its stock is held by other carts
+     */
     public boolean addToCart(Long productId) {
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        final boolean added = addOneToCart(productId);
+        sample.stop(added ? addedToCartTimer : rejectedFromCartTimer);
+        return added;
+    }
+
+    private boolean addOneToCart(Long productId) {
         Product product = productService.getByProductId(productId);
-        if (product != null) {
+        if (product == null)
+            return false;
+
+        final Cart cart = getCart();
+        synchronized (cart) {
+            if (!reservationLedger.hold(cartStore.getCurrentCartKey(), product, cart.getQuantity(productId) + 1))
+                return false;
             cart.addItem(product, 1);
-            return true;
         }
-        return false;
+        return true;
     }
 
     /**
+     * Saves the order, dated today, removes the cart quantities from the stock and adds the order to the sales
+     * reports. Nothing is saved if the stock is insufficient.
+     *
      * @param order Order to be saved
+     * @throws com.openclassrooms.shopmanager.product.InsufficientStockException if a product in the cart does not
+     *                                                                          have enough stock left
      */
+    @Transactional
     public void saveOrder(Order order) {
+        order.setDate(LocalDate.now());
         orderRepository.save(order);
-        productService.updateProductQuantities(this.cart);
+        // Write the order before the stock updates, which bypass the persistence context
+        orderRepository.flush();
+        productService.updateProductQuantities(getCart());
+        salesReportService.recordOrders(Collections.singletonList(order));
     }
 
     /**
-     * @return Returns the single instance of cart in the application
+     * @return Returns the cart of the current session
      */
     public Cart getCart() {
-        return this.cart;
+        return cartStore.getCurrentCart();
     }
 
     public void removeFromCart(Long productId) {
-        Product product = productService.getByProductId(productId);
-        if (product != null) {
-            getCart().removeLine(product);
-        }
+        removeFromCartTimer.record(() -> {
+            Product product = productService.getByProductId(productId);
+            if (product != null) {
+                final Cart cart = getCart();
+                synchronized (cart) {
+                    cart.removeLine(product);
+                    reservationLedger.release(cartStore.getCurrentCartKey(), productId);
+                }
+            }
+        });
     }
 
     public boolean isCartEmpty() {
-        return getCart().getCartLineList().isEmpty();
+        return getCart().isEmpty();
     }
 
+    /**
+     * Saves an order with the lines of the cart, removes them from the stock and empties the cart. The units held by
+     * the cart are renewed first, so that a cart whose holds expired while other carts took the stock fails without
+     * reaching the database. Each attempt runs in its own transaction, retried by the {@link InventoryRetryPolicy}
+     * when it conflicts with concurrent updates of the same products.
+     *
+     * @param order Order to be created
+     * @throws InsufficientStockException                                          if a product in the cart does not
+     *                                                                             have enough stock left
+     * @throws com.openclassrooms.shopmanager.product.InventoryContentionException if the products stay contended
+     *                                                                             after the last attempt
+     */
     public void createOrder(Order order) {
-        order.setLines(new LinkedList<>(getCart().getCartLineList()));
-        saveOrder(order);
-        this.cart.clear();
+        timeCheckout(DIRECT_CHECKOUT, () -> storeCartOrder(order));
+    }
+
+    private void storeCartOrder(Order order) {
+        final Cart cart = getCart();
+        final String cartKey = cartStore.getCurrentCartKey();
+        // Hold the cart for the whole checkout, so no line can be added between the snapshot and the clear
+        synchronized (cart) {
+            final List<CartLine> cartLines = cart.getCartLineList();
+            final Map<Long, Integer> quantitiesByProductId = new LinkedHashMap<>();
+            for (CartLine cartLine : cartLines) {
+                final Product product = cartLine.getProduct();
+                if (!reservationLedger.hold(cartKey, product, cartLine.getQuantity()))
+                    throw new InsufficientStockException(product.getId());
+                quantitiesByProductId.put(product.getId(), cartLine.getQuantity());
+            }
+
+            try {
+                inventoryRetryPolicy.execute(() -> transactionTemplate.execute(status -> {
+                    // A rolled back attempt may have assigned ids that were never stored
+                    order.setId(null);
+                    order.setLines(cartLines.stream().map(OrderLine::new).collect(Collectors.toList()));
+                    saveOrder(order);
+                    return null;
+                }));
+            } catch (InsufficientStockException e) {
+                // The stock changed behind the ledger, which reads it again on the next hold
+                reservationLedger.forget(e.getProductId());
+                throw e;
+            }
+            reservationLedger.commit(cartKey, quantitiesByProductId);
+            cart.clear();
+        }
+    }
+
+    /**
+     * Places an order with the lines of the cart, through the {@link OrderPipeline} when it is enabled, and with
+     * {@link #createOrder(Order)} otherwise.
+     *
+     * @param order Order to be placed
+     * @throws InsufficientStockException if a product in the cart does not have enough stock left
+     * @throws OrderQueueFullException    if the pipeline has no room left for the order
+     */
+    public void placeOrder(Order order) {
+        if (orderPipeline.isEnabled())
+            submitOrder(order);
+        else
+            createOrder(order);
+    }
+
+    /**
+     * Accepts an order with the lines of the cart and empties the cart, leaving the order to be stored and removed
+     * from the stock by the {@link OrderPipeline}. The units held by the cart are renewed, then handed over to the
+     * order, so that they stay held until the order is stored while the cart can be filled again.
+     *
+     * @param order Order to be accepted, which must not be modified afterwards
+     * @throws InsufficientStockException if a product in the cart does not have enough stock left
+     * @throws OrderQueueFullException    if the pipeline has no room left for the order, in which case the cart is
+     *                                    left untouched
+     */
+    public void submitOrder(Order order) {
+        timeCheckout(PIPELINE_CHECKOUT, () -> submitCartOrder(order));
+    }
+
+    private void submitCartOrder(Order order) {
+        final Cart cart = getCart();
+        final String cartKey = cartStore.getCurrentCartKey();
+        synchronized (cart) {
+            final List<CartLine> cartLines = cart.getCartLineList();
+            for (CartLine cartLine : cartLines) {
+                if (!reservationLedger.hold(cartKey, cartLine.getProduct(), cartLine.getQuantity()))
+                    throw new InsufficientStockException(cartLine.getProduct().getId());
+            }
+
+            final String orderKey = cartKey + "#order-" + submittedOrders.incrementAndGet();
+            for (CartLine cartLine : cartLines)
+                reservationLedger.transfer(cartKey, orderKey, cartLine.getProduct().getId());
+            if (!orderPipeline.submit(order, cartLines, orderKey)) {
+                for (CartLine cartLine : cartLines)
+                    reservationLedger.transfer(orderKey, cartKey, cartLine.getProduct().getId());
+                throw new OrderQueueFullException();
+            }
+            cart.clear();
+        }
+    }
+
+    /**
+     * Runs a checkout of the current cart, recording the size of the cart, and the duration of the checkout by mode
+     * and outcome.
+     */
+    private void timeCheckout(String mode, Runnable checkout) {
+        cartSize.record(getCart().getTotalQuantity());
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            checkout.run();
+            outcome = DIRECT_CHECKOUT.equals(mode) ? "stored" : "accepted";
+        } catch (InsufficientStockException e) {
+            outcome = "insufficientStock";
+            throw e;
+        } catch (InventoryContentionException e) {
+            outcome = "contention";
+            throw e;
+        } catch (OrderQueueFullException e) {
+            outcome = "queueFull";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("shop.checkout")
+                    .tags("mode", mode, "outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Returns the orders placed over a date range, most recent first.
+     *
+     * @param from   first day of the range
+     * @param to     last day of the range, included
+     * @param cursor cursor returned with the previous page, or null to get the first page
+     * @param size   maximum number of orders to return, capped to {@link #MAX_HISTORY_PAGE_SIZE}
+     * @return the requested page of orders
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    @Transactional(readOnly = true)
+    public OrderHistoryPage getOrderHistory(LocalDate from, LocalDate to, String cursor, int size) {
+        final int pageSize = Math.max(1, Math.min(size, MAX_HISTORY_PAGE_SIZE));
+        LocalDate beforeDate = to;
+        long beforeId = Long.MAX_VALUE;
+        if (cursor != null) {
+            final int separator = cursor.indexOf(':');
+            try {
+                beforeDate = LocalDate.parse(cursor.substring(0, Math.max(separator, 0)));
+                beforeId = Long.parseLong(cursor.substring(separator + 1));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+            }
+        }
+
+        final List<OrderSummary> orders = orderRepository.findSummariesBefore(
+                from, beforeDate, beforeId, PageRequest.of(0, pageSize + 1));
+        if (orders.size() <= pageSize)
+            return new OrderHistoryPage(orders, null, pageSize);
+
+        final List<OrderSummary> pageOrders = new ArrayList<>(orders.subList(0, pageSize));
+        final OrderSummary last = pageOrders.get(pageSize - 1);
+        return new OrderHistoryPage(pageOrders, last.getDate() + ":" + last.getId(), pageSize);
     }
 }
@@ -0,0 +1,44 @@
+package com.openclassrooms.shopmanager.order;
+
+import java.time.LocalDate;
+
+/**
+ * Read-only view of an order holding only the columns listed in the order history. It is filled directly by the
+ * queries, so neither the order nor its lines are loaded.
+ */
+public class OrderSummary {
+
+    private final Long id;
+    private final LocalDate date;
+    private final String name;
+    private final String city;
+    private final String country;
+
+    public OrderSummary(Long id, LocalDate date, String name, String city, String country) {
+        this.id = id;
+        this.date = date;
+        this.name = name;
+        this.city = city;
+        this.country = country;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+}
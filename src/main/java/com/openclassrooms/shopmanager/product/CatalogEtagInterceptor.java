@@ -0,0 +1,55 @@
+package com.openclassrooms.shopmanager.product;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+import org.springframework.web.servlet.support.RequestContextUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Objects;
+
+/**
+ * Answers the requests of catalog pages with 304 Not Modified when the client already holds the current page, before
+ * the controller reads any product or the template is rendered.
+ * <p>
+ * The strong ETag of a page is made of the {@link CatalogVersion} and of what the page shows of the session: its
+ * locale, the signed in user and the CSRF token of its forms. The query string is part of the URL the client caches
+ * the page under. Pages are marked private and to be revalidated on every use, so that browsers send the ETag back
+ * instead of showing a stale catalog.
+ * <p>
+ * No Last-Modified date is sent: one date for the whole catalog, to the second, would let a client that only sends
+ * {@code If-Modified-Since} be told that a page of another locale or session is current, or miss a change made in the
+ * same second as its copy.
+ */
+@Component
+public class CatalogEtagInterceptor extends HandlerInterceptorAdapter {
+
+    private static final String CACHE_CONTROL = CacheControl.noCache().cachePrivate().getHeaderValue();
+
+    private CatalogVersion catalogVersion;
+
+    @Autowired
+    public CatalogEtagInterceptor(CatalogVersion catalogVersion) {
+        this.catalogVersion = catalogVersion;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        // Read before the page, so that a change made while it renders gives the next request a new ETag
+        final long version = catalogVersion.get();
+        return !new ServletWebRequest(request, response).checkNotModified(etag(request, version));
+    }
+
+    private static String etag(HttpServletRequest request, long version) {
+        final CsrfToken csrfToken = (CsrfToken) request.getAttribute(CsrfToken.class.getName());
+        final int sessionHash = Objects.hash(RequestContextUtils.getLocale(request), request.getRemoteUser(),
+                csrfToken != null ? csrfToken.getToken() : null);
+        return "\"" + Long.toHexString(version) + "-" + Integer.toHexString(sessionHash) + "\"";
+    }
+}
@@ -0,0 +1,71 @@
+package com.openclassrooms.shopmanager.product;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version stamp of the catalog, which changes every time a product is created, deleted or its stock changes. Catalog
+ * pages derive their ETag from it, so that a client can be told its copy is still current without the page being
+ * read from the database nor rendered again.
+ * <p>
+ * A change made in a transaction bumps the version once the transaction commits: bumping it earlier would let a page
+ * rendered before the commit, with the former products, be tagged with the new version. The catalog listings are
+ * cleared right before the version changes: the evictions of the service methods only run after this, and a page
+ * served in between would tag the former listing with the new version.
+ */
+@Component
+public class CatalogVersion {
+
+    // Starts from the clock, so that the versions of a restarted application do not repeat former ones
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    private CacheManager cacheManager;
+
+    @Autowired
+    public CatalogVersion(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * @return current version of the catalog
+     */
+    public long get() {
+        return version.get();
+    }
+
+    /**
+     * Records a change of the catalog, after the commit of the current transaction if there is one, and clears the
+     * catalog listings.
+     */
+    public void bump() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    increment();
+                }
+            });
+        } else {
+            increment();
+        }
+    }
+
+    private void increment() {
+        for (String listing : new String[]{ProductService.PRODUCTS_CACHE, ProductService.ADMIN_PRODUCTS_CACHE}) {
+            Cache cache = cacheManager.getCache(listing);
+            // The transaction has committed, so the listing is cleared now rather than after the commit
+            if (cache instanceof TransactionAwareCacheDecorator)
+                cache = ((TransactionAwareCacheDecorator) cache).getTargetCache();
+            if (cache != null)
+                cache.clear();
+        }
+        version.incrementAndGet();
+    }
+}
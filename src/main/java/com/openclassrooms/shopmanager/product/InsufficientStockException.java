@@ -0,0 +1,18 @@
+package com.openclassrooms.shopmanager.product;
+
+/**
+ * Thrown when an order asks for more units of a product than there are left in stock. The whole order is rejected.
+ */
+public class InsufficientStockException extends RuntimeException {
+
+    private final Long productId;
+
+    public InsufficientStockException(Long productId) {
+        super("Not enough stock left for product " + productId);
+        this.productId = productId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+}
@@ -0,0 +1,19 @@
+package com.openclassrooms.shopmanager.product;
+
+/**
+ * Thrown when an inventory update keeps conflicting with concurrent updates of the same products, after every retry
+ * allowed by the {@link InventoryRetryPolicy}. Nothing has been modified; the request may be retried later.
+ */
+public class InventoryContentionException extends RuntimeException {
+
+    private final int attempts;
+
+    public InventoryContentionException(int attempts, Throwable cause) {
+        super("Inventory update still conflicting after " + attempts + " attempts", cause);
+        this.attempts = attempts;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
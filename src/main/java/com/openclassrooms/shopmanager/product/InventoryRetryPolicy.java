@@ -0,0 +1,104 @@
+package com.openclassrooms.shopmanager.product;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Retries inventory updates that failed because of concurrent updates of the same products: optimistic lock
+ * conflicts on {@link Product#getVersion()}, lock timeouts and deadlocks. Attempts are bounded, and separated by an
+ * exponential backoff with full jitter, so that conflicting transactions do not retry in lockstep.
+ * <p>
+ * A failed attempt rolls back its transaction, so the action must start its own transaction. When a transaction is
+ * already active, the action runs only once and failures are left to the caller.
+ */
+@Component
+public class InventoryRetryPolicy {
+    private static final Logger log = LoggerFactory.getLogger(InventoryRetryPolicy.class);
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    @Autowired
+    public InventoryRetryPolicy(@Value("${shop.inventory.retry.max-attempts:5}") int maxAttempts,
+                                @Value("${shop.inventory.retry.initial-backoff-ms:10}") long initialBackoffMillis,
+                                @Value("${shop.inventory.retry.max-backoff-ms:200}") long maxBackoffMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Runs the action, again after a backoff as long as it fails with a {@link ConcurrencyFailureException} and the
+     * maximum number of attempts is not reached.
+     *
+     * @param action inventory update, run in its own transaction
+     * @return result of the first successful attempt
+     * @throws InventoryContentionException if every attempt conflicted
+     */
+    public <T> T execute(Supplier<T> action) {
+        executions.increment();
+        final int attemptLimit = TransactionSynchronizationManager.isActualTransactionActive() ? 1 : maxAttempts;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                final T result = action.get();
+                if (attempt > 1)
+                    recovered.increment();
+                return result;
+            } catch (ConcurrencyFailureException e) {
+                conflicts.increment();
+                if (attempt >= attemptLimit) {
+                    exhausted.increment();
+                    log.warn("Inventory update abandoned after {} conflicting attempts", attempt);
+                    throw new InventoryContentionException(attempt, e);
+                }
+                retries.increment();
+                backOff(attempt, e);
+            }
+        }
+    }
+
+    private void backOff(int attempt, ConcurrencyFailureException cause) {
+        final long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        if (ceiling <= 0)
+            return;
+        try {
+            TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InventoryContentionException(attempt, cause);
+        }
+    }
+
+    /**
+     * @return number of updates run, conflicting attempts, retries, updates that succeeded after a retry and updates
+     * abandoned after the last attempt
+     */
+    public Map<String, Long> getStats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("executions", executions.sum());
+        stats.put("conflicts", conflicts.sum());
+        stats.put("retries", retries.sum());
+        stats.put("recovered", recovered.sum());
+        stats.put("exhausted", exhausted.sum());
+        return stats;
+    }
+}
@@ -1,12 +1,30 @@
 package com.openclassrooms.shopmanager.product;
 
+import com.openclassrooms.shopmanager.money.Money;
+import com.openclassrooms.shopmanager.money.MoneyConverter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Version;
 import java.util.Objects;
 
+/**
+ * A product of the catalog. Products are kept in the Hibernate second-level cache, from which the stock updates made
+ * through JDBC by {@link ProductRepositoryCustom} evict them.
+ */
 @Entity
+@Table(indexes = @Index(name = "idx_product_status_id", columnList = "status, id"))
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Product {
 
     @Id
@@ -15,7 +33,21 @@ public class Product {
 
     private String name, description, details;
     private int quantity;
-    private double price;
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 19, scale = 2)
+    private Money price;
+
+    /**
+     * Incremented by every update, including the stock decrements made through JDBC, so that a stale copy of the
+     * product cannot overwrite a concurrent change
+     */
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, columnDefinition = "varchar(16) default 'ACTIVE'")
+    private ProductStatus status = ProductStatus.ACTIVE;
 
     public Long getId() {
         return id;
@@ -57,14 +89,30 @@ public class Product {
         this.quantity = quantity;
     }
 
-    public double getPrice() {
+    public Money getPrice() {
         return price;
     }
 
-    public void setPrice(double price) {
+    public void setPrice(Money price) {
         this.price = price;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public ProductStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ProductStatus status) {
+        this.status = status;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -2,6 +2,9 @@ package com.openclassrooms.shopmanager.product;
 
 import com.openclassrooms.shopmanager.order.OrderService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -9,34 +12,69 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 
 @Controller
 public class ProductController {
 
+    private static final String DEFAULT_PAGE_SIZE = "" + ProductService.DEFAULT_PAGE_SIZE;
+
     private ProductService productService;
 
     private OrderService orderService;
 
+    private ProductImportService productImportService;
+
+    private ProductExportService productExportService;
+
     @Autowired
-    public ProductController(final ProductService productService, final OrderService orderService) {
+    public ProductController(final ProductService productService, final OrderService orderService,
+                             final ProductImportService productImportService,
+                             final ProductExportService productExportService) {
         this.productService = productService;
         this.orderService = orderService;
+        this.productImportService = productImportService;
+        this.productExportService = productExportService;
     }
 
     @GetMapping(value = {"/products", "/"})
-    public String getProducts(Model model) {
-        model.addAttribute("products", productService.getAllProducts());
+    public String getProducts(@RequestParam(value = "after", required = false) Long after,
+                              @RequestParam(value = "size", defaultValue = DEFAULT_PAGE_SIZE) int size,
+                              Model model) {
+        addPageToModel(productService.getProductsPage(after, size), model);
         return "products";
     }
 
     @GetMapping("/admin/products")
-    public String getAdminProducts(Model model) {
-        model.addAttribute("products", productService.getAllAdminProducts());
+    public String getAdminProducts(@RequestParam(value = "before", required = false) Long before,
+                                   @RequestParam(value = "size", defaultValue = DEFAULT_PAGE_SIZE) int size,
+                                   Model model) {
+        addPageToModel(productService.getAdminProductsPage(before, size), model);
         return "productsAdmin";
     }
 
+    @GetMapping("/products/search")
+    public String searchProducts(@RequestParam("q") String query,
+                                 @RequestParam(value = "size", defaultValue = DEFAULT_PAGE_SIZE) int size,
+                                 Model model) {
+        model.addAttribute("products", productService.searchProducts(query, size));
+        model.addAttribute("nextCursor", null);
+        model.addAttribute("pageSize", size);
+        model.addAttribute("query", query);
+        return "products";
+    }
+
+    private static void addPageToModel(ProductPage page, Model model) {
+        model.addAttribute("products", page.getProducts());
+        model.addAttribute("nextCursor", page.getNextCursor());
+        model.addAttribute("pageSize", page.getSize());
+    }
+
 
     @GetMapping("/admin/product")
     public String productForm(Model model) {
@@ -46,22 +84,66 @@ public class ProductController {
 
     @PostMapping("/admin/product")
     public String createProduct(@Valid @ModelAttribute("product") ProductModel productModel, BindingResult result) {
-        for (String error : productService.checkProductIsValid(productModel))
+        final ValidatedProduct validatedProduct = productService.validateProduct(productModel);
+        for (String error : validatedProduct.getErrors())
             result.reject(error);
 
         if (!result.hasErrors()) {
-            productService.createProduct(productModel);
+            productService.createProduct(validatedProduct);
             return "redirect:/admin/products";
         } else {
             return "product";
         }
     }
 
+    /**
+     * Imports products from the request body, which is streamed rather than buffered.
+     */
+    @PostMapping(value = "/admin/products/import", consumes = "text/csv")
+    @ResponseBody
+    public ProductImportReport importProductsCsv(InputStream body) throws IOException {
+        return productImportService.importCsv(body);
+    }
+
+    @PostMapping(value = "/admin/products/import", consumes = {"application/x-ndjson", "application/jsonl"})
+    @ResponseBody
+    public ProductImportReport importProductsJsonLines(InputStream body) throws IOException {
+        return productImportService.importJsonLines(body);
+    }
+
+    /**
+     * Exports the whole catalog as CSV, or as JSON lines with {@code format=jsonl}. The response is written from a
+     * database cursor on an async thread, and sent chunked.
+     */
+    @GetMapping("/admin/products/export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(
+            @RequestParam(value = "format", defaultValue = "csv") String format) {
+        if ("jsonl".equals(format)) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("application/x-ndjson;charset=UTF-8"))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"products.jsonl\"")
+                    .body(productExportService::exportJsonLines);
+        } else if ("csv".equals(format)) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("text/csv;charset=UTF-8"))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"products.csv\"")
+                    .body(productExportService::exportCsv);
+        }
+        return ResponseEntity.badRequest().build();
+    }
+
+    @PostMapping("/admin/restockProduct")
+    public String restockProduct(@RequestParam("productId") Long productId, @RequestParam("quantity") int quantity) {
+        if (quantity > 0)
+            productService.restockProduct(productId, quantity);
+        return "redirect:/admin/products";
+    }
+
     @PostMapping("/admin/deleteProduct")
     public String deleteProduct(@RequestParam("delProductId") Long delProductId, Model model) {
         orderService.removeFromCart(delProductId);
         productService.deleteProduct(delProductId);
-        model.addAttribute("products", productService.getAllAdminProducts());
+        addPageToModel(productService.getAdminProductsPage(null, ProductService.DEFAULT_PAGE_SIZE), model);
 
         return "productsAdmin";
     }
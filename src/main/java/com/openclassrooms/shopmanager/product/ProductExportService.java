@@ -0,0 +1,139 @@
+package com.openclassrooms.shopmanager.product;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports the whole catalog as CSV or JSON lines. Products are read through a forward-only cursor and written as soon
+ * as they are read, so memory use does not depend on the size of the catalog. The CSV output can be imported back
+ * with {@link ProductImportService}.
+ */
+@Service
+public class ProductExportService {
+    private static final Logger log = LoggerFactory.getLogger(ProductExportService.class);
+
+    static final String CSV_HEADER = "id,name,description,details,price,quantity";
+
+    private ProductRepository productRepository;
+    private ObjectMapper objectMapper;
+    private int fetchSize;
+
+    @Autowired
+    public ProductExportService(ProductRepository productRepository, ObjectMapper objectMapper,
+                                @Value("${shop.export.fetch-size:1000}") int fetchSize) {
+        this.productRepository = productRepository;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Writes the catalog as UTF-8 encoded CSV, with a header row, in ascending id order.
+     *
+     * @param output stream to write to, not closed by this method
+     */
+    public void exportCsv(OutputStream output) throws IOException {
+        final long start = System.nanoTime();
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        final long count = forEachProduct(product -> {
+            writer.write(String.valueOf(product.getId()));
+            writer.write(',');
+            writeCsvField(writer, product.getName());
+            writer.write(',');
+            writeCsvField(writer, product.getDescription());
+            writer.write(',');
+            writeCsvField(writer, product.getDetails());
+            writer.write(',');
+            writer.write(product.getPrice().toString());
+            writer.write(',');
+            writer.write(String.valueOf(product.getQuantity()));
+            writer.write('\n');
+        });
+        writer.flush();
+        logExport("CSV", count, start);
+    }
+
+    /**
+     * Writes the catalog as UTF-8 encoded JSON lines, one product per line, in ascending id order.
+     *
+     * @param output stream to write to, not closed by this method
+     */
+    public void exportJsonLines(OutputStream output) throws IOException {
+        final long start = System.nanoTime();
+        final JsonGenerator generator = objectMapper.getFactory().createGenerator(output)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        final long count = forEachProduct(product -> {
+            generator.writeStartObject();
+            generator.writeNumberField("id", product.getId());
+            generator.writeStringField("name", product.getName());
+            generator.writeStringField("description", product.getDescription());
+            generator.writeStringField("details", product.getDetails());
+            generator.writeNumberField("price", product.getPrice().getAmount());
+            generator.writeNumberField("quantity", product.getQuantity());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        });
+        generator.close();
+        logExport("JSON lines", count, start);
+    }
+
+    private long forEachProduct(ProductWriter productWriter) throws IOException {
+        final long[] count = {0};
+        try {
+            productRepository.forEachProduct(fetchSize, product -> {
+                try {
+                    productWriter.write(product);
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count[0];
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null)
+            return;
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            final char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            writer.write(value);
+            return;
+        }
+
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static void logExport(String format, long count, long start) {
+        log.info("Exported {} products as {} in {} ms", count, format,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private interface ProductWriter {
+        void write(Product product) throws IOException;
+    }
+}
@@ -0,0 +1,170 @@
+package com.openclassrooms.shopmanager.product;
+
+import com.openclassrooms.shopmanager.money.Money;
+
+/**
+ * Parses the numeric fields of the product form in a single pass, without throwing or allocating. Invalid input is
+ * reported with sentinel values rather than with a {@link NumberFormatException}, whose stack trace costs far more
+ * than the parsing itself.
+ */
+final class ProductFieldParser {
+
+    /**
+     * Returned when the text is not a number
+     */
+    static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+    /**
+     * Returned when a positive price does not fit in a {@link Money}
+     */
+    static final long TOO_LARGE = Long.MIN_VALUE + 1;
+
+    private static final int FRACTION_DIGITS = Money.DEFAULT_CURRENCY.getDefaultFractionDigits();
+
+    /**
+     * Exponents beyond this value overflow any price, or round it to zero, so larger ones are clamped to it
+     */
+    private static final int MAX_EXPONENT = 10_000;
+
+    private ProductFieldParser() {
+    }
+
+    /**
+     * @return true if the text is null, empty or made of whitespace only
+     */
+    static boolean isBlank(String text) {
+        if (text == null)
+            return true;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > ' ')
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses an integer with the syntax of {@link Integer#parseInt(String)}.
+     *
+     * @return the integer, or {@link #NOT_A_NUMBER} if the text is not an integer or does not fit in an int
+     */
+    static long parseInteger(String text) {
+        final int length = text.length();
+        if (length == 0)
+            return NOT_A_NUMBER;
+
+        int i = 0;
+        final boolean negative = text.charAt(0) == '-';
+        if (negative || text.charAt(0) == '+') {
+            if (length == 1)
+                return NOT_A_NUMBER;
+            i++;
+        }
+
+        final long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long value = 0;
+        for (; i < length; i++) {
+            final int digit = Character.digit(text.charAt(i), 10);
+            if (digit < 0)
+                return NOT_A_NUMBER;
+            value = value * 10 + digit;
+            if (value > limit)
+                return NOT_A_NUMBER;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a decimal price in the default currency straight into minor units, rounded half even. The syntax is the
+     * decimal one of {@link Double#parseDouble(String)}: surrounding whitespace, a sign, an exponent and a trailing
+     * {@code d} or {@code f} are accepted, while {@code NaN}, {@code Infinity} and hexadecimal values are not.
+     *
+     * @return the price in minor units, {@link #NOT_A_NUMBER} if the text is not a decimal number, or
+     * {@link #TOO_LARGE} if the price is positive and does not fit in a {@link Money}. Negative prices too large for
+     * a {@link Money} are returned as -1.
+     */
+    static long parsePrice(String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ')
+            start++;
+        while (end > start && text.charAt(end - 1) <= ' ')
+            end--;
+        if (end > start && "dDfF".indexOf(text.charAt(end - 1)) >= 0)
+            end--;
+        if (start == end)
+            return NOT_A_NUMBER;
+
+        final boolean negative = text.charAt(start) == '-';
+        if (negative || text.charAt(start) == '+')
+            start++;
+
+        int i = start;
+        while (i < end && isAsciiDigit(text.charAt(i)))
+            i++;
+        final int integerLength = i - start;
+        int fractionStart = i;
+        if (i < end && text.charAt(i) == '.') {
+            fractionStart = ++i;
+            while (i < end && isAsciiDigit(text.charAt(i)))
+                i++;
+        }
+        final int digitCount = integerLength + i - fractionStart;
+        if (digitCount == 0)
+            return NOT_A_NUMBER;
+
+        int exponent = 0;
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            final boolean negativeExponent = i < end && text.charAt(i) == '-';
+            if (i < end && (negativeExponent || text.charAt(i) == '+'))
+                i++;
+            final int exponentStart = i;
+            while (i < end && isAsciiDigit(text.charAt(i))) {
+                exponent = Math.min(exponent * 10 + text.charAt(i) - '0', MAX_EXPONENT);
+                i++;
+            }
+            if (i == exponentStart)
+                return NOT_A_NUMBER;
+            if (negativeExponent)
+                exponent = -exponent;
+        }
+        if (i != end)
+            return NOT_A_NUMBER;
+
+        // Digits before this position are kept as minor units, the following ones only decide the rounding
+        final int cut = integerLength + exponent + FRACTION_DIGITS;
+        long value = 0;
+        for (int k = 0; k < cut; k++) {
+            if (k >= digitCount && value == 0)
+                break;
+            final int digit = k < digitCount ? digitAt(text, start, integerLength, fractionStart, k) : 0;
+            if (value > (Long.MAX_VALUE - digit) / 10)
+                return negative ? -1 : TOO_LARGE;
+            value = value * 10 + digit;
+        }
+
+        final int roundingDigit = cut >= 0 && cut < digitCount
+                ? digitAt(text, start, integerLength, fractionStart, cut) : 0;
+        boolean sticky = false;
+        for (int k = Math.max(cut + 1, 0); k < digitCount && !sticky; k++)
+            sticky = digitAt(text, start, integerLength, fractionStart, k) != 0;
+        if (roundingDigit > 5 || (roundingDigit == 5 && (sticky || (value & 1) != 0))) {
+            if (value == Long.MAX_VALUE)
+                return negative ? -1 : TOO_LARGE;
+            value++;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return the k-th significant digit, counting the integer digits then the fraction digits
+     */
+    private static int digitAt(String text, int integerStart, int integerLength, int fractionStart, int k) {
+        return (k < integerLength ? text.charAt(integerStart + k) : text.charAt(fractionStart + k - integerLength))
+                - '0';
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,82 @@
+package com.openclassrooms.shopmanager.product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk product import. Rows are numbered from 1, not counting the CSV header, and errors are the same
+ * codes as the ones reported by the product form. Only the first errors are listed, {@link #getErrorCount()} gives
+ * the total.
+ */
+public class ProductImportReport {
+
+    private long rowsRead;
+    private long rowsImported;
+    private long errorCount;
+    private final List<RowError> errors = new ArrayList<>();
+    private long elapsedMillis;
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsImported() {
+        return rowsImported;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public List<RowError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return number of rows read per second
+     */
+    public long getRowsPerSecond() {
+        return elapsedMillis > 0 ? rowsRead * 1000 / elapsedMillis : rowsRead;
+    }
+
+    void rowRead() {
+        rowsRead++;
+    }
+
+    void rowsImported(int count) {
+        rowsImported += count;
+    }
+
+    void addError(long row, List<String> rowErrors, int maxReportedErrors) {
+        errorCount++;
+        if (errors.size() < maxReportedErrors)
+            errors.add(new RowError(row, rowErrors));
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public static class RowError {
+        private final long row;
+        private final List<String> errors;
+
+        RowError(long row, List<String> errors) {
+            this.row = row;
+            this.errors = errors;
+        }
+
+        public long getRow() {
+            return row;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+}
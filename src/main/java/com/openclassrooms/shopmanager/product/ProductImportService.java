@@ -0,0 +1,354 @@
+package com.openclassrooms.shopmanager.product;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.openclassrooms.shopmanager.product.ProductService.ADMIN_PRODUCTS_CACHE;
+import static com.openclassrooms.shopmanager.product.ProductService.PRODUCTS_CACHE;
+
+/**
+ * Imports products in bulk from CSV or JSON lines. The input is read row by row, each row is validated with the
+ * rules of the product form, and valid rows are inserted in JDBC batches, so that only one batch of products is held
+ * in memory whatever the size of the input. Every batch is committed on its own: rows already inserted are kept if
+ * the import fails midway.
+ */
+@Service
+public class ProductImportService {
+    private static final Logger log = LoggerFactory.getLogger(ProductImportService.class);
+
+    /**
+     * Size of the product table text columns
+     */
+    static final int MAX_TEXT_LENGTH = 255;
+
+    /**
+     * Longest row read, in characters. Longer rows are rejected, and skipped without being held in memory
+     */
+    static final int MAX_ROW_LENGTH = 8192;
+
+    private ProductRepository productRepository;
+    private ProductService productService;
+    private ProductSearchIndex searchIndex;
+    private CatalogVersion catalogVersion;
+    private ObjectReader jsonReader;
+    private int batchSize;
+    private int maxReportedErrors;
+
+    @Autowired
+    public ProductImportService(ProductRepository productRepository, ProductService productService,
+                                ProductSearchIndex searchIndex, CatalogVersion catalogVersion,
+                                ObjectMapper objectMapper,
+                                @Value("${shop.import.batch-size:1000}") int batchSize,
+                                @Value("${shop.import.max-reported-errors:1000}") int maxReportedErrors) {
+        this.productRepository = productRepository;
+        this.productService = productService;
+        this.searchIndex = searchIndex;
+        this.catalogVersion = catalogVersion;
+        this.jsonReader = objectMapper.readerFor(ProductModel.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    /**
+     * Imports products from CSV. The first record is a header naming the columns, among {@code name},
+     * {@code description}, {@code details}, {@code price} and {@code quantity}, in any order. Fields may be quoted,
+     * quotes being escaped by doubling them.
+     *
+     * @param input UTF-8 encoded CSV
+     * @return import report
+     */
+    @CacheEvict(cacheNames = {PRODUCTS_CACHE, ADMIN_PRODUCTS_CACHE}, allEntries = true)
+    public ProductImportReport importCsv(InputStream input) throws IOException {
+        final CsvReader csvReader = new CsvReader(newReader(input));
+        final ImportRun run = new ImportRun();
+
+        final Map<String, Integer> columns = new HashMap<>();
+        final List<String> header = csvReader.readRecord();
+        if (header != null) {
+            for (int i = 0; i < header.size(); i++)
+                columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columns.containsKey("name") || !columns.containsKey("price") || !columns.containsKey("quantity")) {
+            run.report.addError(0, Collections.singletonList("import.InvalidHeader"), maxReportedErrors);
+            return run.finish();
+        }
+
+        List<String> record;
+        while ((record = csvReader.readRecord()) != null) {
+            if (record == CsvReader.TOO_LONG_RECORD) {
+                run.reject("import.RowTooLong");
+                continue;
+            }
+            if (record.size() == 1 && record.get(0).isEmpty())
+                continue;
+            final ProductModel productModel = new ProductModel();
+            productModel.setName(field(record, columns, "name"));
+            productModel.setDescription(field(record, columns, "description"));
+            productModel.setDetails(field(record, columns, "details"));
+            productModel.setPrice(field(record, columns, "price"));
+            productModel.setQuantity(field(record, columns, "quantity"));
+            run.accept(productModel);
+        }
+        return run.finish();
+    }
+
+    /**
+     * Imports products from JSON lines: one JSON object per line, with the fields of the product form.
+     *
+     * @param input UTF-8 encoded JSON lines
+     * @return import report
+     */
+    @CacheEvict(cacheNames = {PRODUCTS_CACHE, ADMIN_PRODUCTS_CACHE}, allEntries = true)
+    public ProductImportReport importJsonLines(InputStream input) throws IOException {
+        final LineReader reader = new LineReader(newReader(input));
+        final ImportRun run = new ImportRun();
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (reader.wasTooLong()) {
+                run.reject("import.RowTooLong");
+                continue;
+            }
+            if (line.trim().isEmpty())
+                continue;
+            ProductModel productModel;
+            try {
+                productModel = jsonReader.readValue(line);
+            } catch (IOException e) {
+                productModel = null;
+            }
+            if (productModel != null)
+                productModel.setId(null);
+            run.accept(productModel);
+        }
+        return run.finish();
+    }
+
+    private static BufferedReader newReader(InputStream input) {
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    private static String field(List<String> record, Map<String, Integer> columns, String column) {
+        final Integer index = columns.get(column);
+        return index != null && index < record.size() ? record.get(index) : null;
+    }
+
+    /**
+     * State of one import: the pending batch and the report.
+     */
+    private class ImportRun {
+        private final long start = System.nanoTime();
+        private final ProductImportReport report = new ProductImportReport();
+        private final List<Product> batch = new ArrayList<>(batchSize);
+        private final ValidatedProduct validatedProduct = new ValidatedProduct();
+
+        /**
+         * @param productModel product read from the row, or null if the row could not be parsed
+         */
+        private void accept(ProductModel productModel) {
+            if (productModel == null) {
+                reject("import.MalformedRow");
+                return;
+            }
+
+            report.rowRead();
+            productService.validateProduct(productModel, validatedProduct);
+            if (isTooLong(productModel.getName()) || isTooLong(productModel.getDescription())
+                    || isTooLong(productModel.getDetails()))
+                validatedProduct.addError("import.FieldTooLong");
+            if (!validatedProduct.isValid()) {
+                report.addError(report.getRowsRead(), validatedProduct.getErrors(), maxReportedErrors);
+                return;
+            }
+
+            batch.add(validatedProduct.toProduct());
+            if (batch.size() == batchSize)
+                flush();
+        }
+
+        /**
+         * Counts a row that could not be read as a product.
+         */
+        private void reject(String error) {
+            report.rowRead();
+            report.addError(report.getRowsRead(), Collections.singletonList(error), maxReportedErrors);
+        }
+
+        private boolean isTooLong(String text) {
+            return text != null && text.length() > MAX_TEXT_LENGTH;
+        }
+
+        private void flush() {
+            if (batch.isEmpty())
+                return;
+            productRepository.insertProducts(batch);
+            // Only the products of this batch, with the ids read back from the insert: products created meanwhile
+            // by other requests are indexed by them
+            for (Product product : batch)
+                searchIndex.add(product);
+            catalogVersion.bump();
+            report.rowsImported(batch.size());
+            batch.clear();
+        }
+
+        private ProductImportReport finish() {
+            flush();
+            report.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            log.info("Imported {} of {} products in {} ms", report.getRowsImported(), report.getRowsRead(),
+                    report.getElapsedMillis());
+            return report;
+        }
+    }
+
+    /**
+     * Minimal RFC 4180 reader: fields are separated by commas and may be quoted, in which case they can contain
+     * commas, line breaks and doubled quotes.
+     */
+    private static class CsvReader {
+        /**
+         * Returned in place of the fields of a record longer than {@link #MAX_ROW_LENGTH}
+         */
+        private static final List<String> TOO_LONG_RECORD = Collections.unmodifiableList(new ArrayList<>());
+
+        private final Reader reader;
+        private final StringBuilder field = new StringBuilder();
+        private boolean firstRecord = true;
+        private int recordLength;
+
+        private CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return fields of the next record, or null at the end of the input
+         */
+        private List<String> readRecord() throws IOException {
+            recordLength = 0;
+            int c = read();
+            if (firstRecord && c == '\uFEFF')
+                c = read();
+            firstRecord = false;
+            if (c == -1)
+                return null;
+
+            final List<String> fields = new ArrayList<>();
+            boolean quoted = false;
+            boolean fieldStarted = false;
+            field.setLength(0);
+            while (true) {
+                if (quoted) {
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                        append(c);
+                    } else if (c == -1) {
+                        return endRecord(fields);
+                    } else {
+                        append(c);
+                    }
+                } else if (c == '"' && !fieldStarted) {
+                    quoted = true;
+                    fieldStarted = true;
+                } else if (c == ',') {
+                    if (recordLength <= MAX_ROW_LENGTH)
+                        fields.add(field.toString());
+                    field.setLength(0);
+                    fieldStarted = false;
+                } else if (c == '\n' || c == -1) {
+                    return endRecord(fields);
+                } else if (c != '\r') {
+                    append(c);
+                    fieldStarted = true;
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            recordLength++;
+            return reader.read();
+        }
+
+        /**
+         * Appends a character to the current field, unless the record is too long to be kept.
+         */
+        private void append(int c) {
+            if (recordLength <= MAX_ROW_LENGTH)
+                field.append((char) c);
+        }
+
+        private List<String> endRecord(List<String> fields) {
+            if (recordLength > MAX_ROW_LENGTH)
+                return TOO_LONG_RECORD;
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    /**
+     * Reads lines like {@link BufferedReader#readLine()}, but only keeps the first {@link #MAX_ROW_LENGTH} characters
+     * of each: the rest of a longer line is skipped.
+     */
+    private static class LineReader {
+        private final Reader reader;
+        private final StringBuilder line = new StringBuilder();
+        private boolean tooLong;
+
+        private LineReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return the next line without its terminator, or null at the end of the input
+         */
+        private String readLine() throws IOException {
+            line.setLength(0);
+            tooLong = false;
+            int c = reader.read();
+            if (c == -1)
+                return null;
+            while (c != -1 && c != '\n') {
+                if (line.length() < MAX_ROW_LENGTH)
+                    line.append((char) c);
+                else
+                    tooLong = true;
+                c = reader.read();
+            }
+            if (line.length() > 0 && line.charAt(line.length() - 1) == '\r')
+                line.setLength(line.length() - 1);
+            return line.toString();
+        }
+
+        /**
+         * @return whether the last line read was longer than {@link #MAX_ROW_LENGTH}, and cut
+         */
+        private boolean wasTooLong() {
+            return tooLong;
+        }
+    }
+}
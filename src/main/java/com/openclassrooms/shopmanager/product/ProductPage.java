@@ -0,0 +1,34 @@
+package com.openclassrooms.shopmanager.product;
+
+import java.util.List;
+
+/**
+ * A window of the catalog, along with the cursor to pass to get the following window.
+ */
+public class ProductPage {
+
+    private final List<ProductSummary> products;
+    private final Long nextCursor;
+    private final int size;
+
+    public ProductPage(List<ProductSummary> products, Long nextCursor, int size) {
+        this.products = products;
+        this.nextCursor = nextCursor;
+        this.size = size;
+    }
+
+    public List<ProductSummary> getProducts() {
+        return products;
+    }
+
+    /**
+     * @return ID to pass as cursor to get the next page, or null if this is the last page
+     */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
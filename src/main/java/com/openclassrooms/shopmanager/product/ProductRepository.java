@@ -1,13 +1,54 @@
 package com.openclassrooms.shopmanager.product;
 
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface ProductRepository extends JpaRepository<Product,Long> {
+public interface ProductRepository extends JpaRepository<Product,Long>, ProductRepositoryCustom {
 
-     List<Product> findAllByOrderByIdDesc();
+     List<Product> findAllByStatusNot(ProductStatus status);
+
+     /**
+      * Cached by the Hibernate query cache, which only holds the ids and reads the products from the second-level
+      * cache. Products saved or deleted through Hibernate invalidate it, inserts and retirements through JDBC must
+      * evict it.
+      */
+     @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
+     List<Product> findAllByStatusNotOrderByIdDesc(ProductStatus status);
+
+     /**
+      * Keyset pagination over the active products in ascending id order, returning only the listed columns. The
+      * pageable only limits the number of rows, it must always request the first page so that no OFFSET is used.
+      */
+     @Query("SELECT new com.openclassrooms.shopmanager.product.ProductSummary(p.id, p.name, p.description, p.price, p.quantity) " +
+             "FROM Product p WHERE p.status = com.openclassrooms.shopmanager.product.ProductStatus.ACTIVE " +
+             "AND p.id > :after ORDER BY p.id ASC")
+     List<ProductSummary> findSummariesAfter(@Param("after") Long after, Pageable pageable);
+
+     /**
+      * Keyset pagination over every product that is not retired, out of stock ones included, in descending id order,
+      * returning only the listed columns. The pageable only limits the number of rows, it must always request the
+      * first page so that no OFFSET is used.
+      */
+     @Query("SELECT new com.openclassrooms.shopmanager.product.ProductSummary(p.id, p.name, p.description, p.price, p.quantity) " +
+             "FROM Product p WHERE p.status <> com.openclassrooms.shopmanager.product.ProductStatus.RETIRED " +
+             "AND p.id < :before ORDER BY p.id DESC")
+     List<ProductSummary> findSummariesBefore(@Param("before") Long before, Pageable pageable);
+
+     /**
+      * Loads the listed columns of the given products that are active, in no particular order.
+      */
+     @Query("SELECT new com.openclassrooms.shopmanager.product.ProductSummary(p.id, p.name, p.description, p.price, p.quantity) " +
+             "FROM Product p WHERE p.status = com.openclassrooms.shopmanager.product.ProductStatus.ACTIVE " +
+             "AND p.id IN :ids")
+     List<ProductSummary> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,74 @@
+package com.openclassrooms.shopmanager.product;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Bulk stock operations that are executed directly through JDBC instead of loading and saving entities.
+ */
+public interface ProductRepositoryCustom {
+
+    /**
+     * Decrements the quantity of every given product, as long as enough stock is left, sending all the updates in a
+     * single JDBC batch. The version of every updated product is incremented, so stale copies can no longer be saved.
+     *
+     * @param quantitiesByProductId quantity to remove from the stock of each product
+     * @return number of rows updated for each product, in the iteration order of the map. A product that does not
+     * exist or does not have enough stock has an update count of zero
+     */
+    int[] decrementQuantities(Map<Long, Integer> quantitiesByProductId);
+
+    /**
+     * Marks the given products {@link ProductStatus#OUT_OF_STOCK} if they have no stock left. The rows are kept, so
+     * that order lines still reference them.
+     *
+     * @param productIds IDs of the products to check
+     * @return number of products marked out of stock
+     */
+    int markOutOfStock(Collection<Long> productIds);
+
+    /**
+     * Adds units to the stock of a product and makes it {@link ProductStatus#ACTIVE} again, in a single update.
+     *
+     * @param productId ID of the product to restock
+     * @param quantity  number of units to add
+     * @return number of updated rows, 0 if the product does not exist or is retired
+     */
+    int restock(Long productId, int quantity);
+
+    /**
+     * Marks a product {@link ProductStatus#RETIRED}, which removes it from the catalog. The row is kept, so that the
+     * order lines of past orders still reference it.
+     *
+     * @param productId ID of the product to retire
+     * @return number of updated rows, 0 if the product does not exist or is already retired
+     */
+    int retire(Long productId);
+
+    /**
+     * Reads the whole catalog through a forward-only cursor, handing each product to the consumer as soon as it is
+     * read. The products are not managed, and only {@code fetchSize} rows are held in memory at once.
+     *
+     * @param fetchSize number of rows fetched from the database at a time
+     * @param consumer  consumer of the products, called in ascending id order
+     */
+    void forEachProduct(int fetchSize, Consumer<Product> consumer);
+
+    /**
+     * Same as {@link #forEachProduct(int, Consumer)}, starting after the given product id.
+     *
+     * @param afterId   products whose id is lower than or equal to this one are skipped
+     * @param fetchSize number of rows fetched from the database at a time
+     * @param consumer  consumer of the products, called in ascending id order
+     */
+    void forEachProductAfter(long afterId, int fetchSize, Consumer<Product> consumer);
+
+    /**
+     * Inserts the given products in a single JDBC batch, and sets the generated ids on them.
+     *
+     * @param products products to insert
+     */
+    void insertProducts(List<Product> products);
+}
@@ -0,0 +1,175 @@
+package com.openclassrooms.shopmanager.product;
+
+import com.openclassrooms.shopmanager.money.Money;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The statements below bypass Hibernate, which therefore cannot keep its second-level cache up to date: every update
+ * evicts the products it touched, and inserts evict the cached query results. Evictions are made right away and again
+ * once the transaction completes, so that a copy read by another transaction before the commit does not stay cached.
+ */
+class ProductRepositoryImpl implements ProductRepositoryCustom {
+
+    private static final String DECREMENT_QUANTITY =
+            "UPDATE product SET quantity = quantity - ?, version = version + 1 " +
+                    "WHERE id = ? AND quantity >= ? AND status <> 'RETIRED'";
+
+    private static final String SELECT_AFTER =
+            "SELECT id, name, description, details, quantity, price FROM product " +
+                    "WHERE id > ? AND status <> 'RETIRED' ORDER BY id";
+
+    private static final String INSERT =
+            "INSERT INTO product (name, description, details, quantity, price) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String MARK_OUT_OF_STOCK =
+            "UPDATE product SET status = 'OUT_OF_STOCK', version = version + 1 " +
+                    "WHERE id IN (:ids) AND quantity < 1 AND status = 'ACTIVE'";
+
+    private static final String RESTOCK =
+            "UPDATE product SET quantity = quantity + ?, status = 'ACTIVE', version = version + 1 " +
+                    "WHERE id = ? AND status <> 'RETIRED'";
+
+    private static final String RETIRE =
+            "UPDATE product SET status = 'RETIRED', version = version + 1 WHERE id = ? AND status <> 'RETIRED'";
+
+    private JdbcTemplate jdbcTemplate;
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    ProductRepositoryImpl(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public int[] decrementQuantities(Map<Long, Integer> quantitiesByProductId) {
+        final List<Map.Entry<Long, Integer>> decrements = new ArrayList<>(quantitiesByProductId.entrySet());
+
+        evictAfterWrite(new ArrayList<>(quantitiesByProductId.keySet()), false);
+        return jdbcTemplate.batchUpdate(DECREMENT_QUANTITY, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                final Map.Entry<Long, Integer> decrement = decrements.get(i);
+                ps.setInt(1, decrement.getValue());
+                ps.setLong(2, decrement.getKey());
+                ps.setInt(3, decrement.getValue());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return decrements.size();
+            }
+        });
+    }
+
+    @Override
+    public int markOutOfStock(Collection<Long> productIds) {
+        if (productIds.isEmpty())
+            return 0;
+
+        evictAfterWrite(new ArrayList<>(productIds), false);
+        return namedParameterJdbcTemplate.update(MARK_OUT_OF_STOCK, new MapSqlParameterSource("ids", productIds));
+    }
+
+    @Override
+    public int restock(Long productId, int quantity) {
+        evictAfterWrite(Collections.singletonList(productId), false);
+        return jdbcTemplate.update(RESTOCK, quantity, productId);
+    }
+
+    @Override
+    public int retire(Long productId) {
+        evictAfterWrite(Collections.singletonList(productId), true);
+        return jdbcTemplate.update(RETIRE, productId);
+    }
+
+    @Override
+    public void forEachProduct(int fetchSize, Consumer<Product> consumer) {
+        forEachProductAfter(0L, fetchSize, consumer);
+    }
+
+    @Override
+    public void forEachProductAfter(long afterId, int fetchSize, Consumer<Product> consumer) {
+        jdbcTemplate.query(connection -> {
+            final PreparedStatement ps = connection.prepareStatement(
+                    SELECT_AFTER, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setLong(1, afterId);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            final Product product = new Product();
+            product.setId(rs.getLong("id"));
+            product.setName(rs.getString("name"));
+            product.setDescription(rs.getString("description"));
+            product.setDetails(rs.getString("details"));
+            product.setQuantity(rs.getInt("quantity"));
+            product.setPrice(Money.of(rs.getBigDecimal("price")));
+            consumer.accept(product);
+        });
+    }
+
+    @Override
+    public void insertProducts(List<Product> products) {
+        evictAfterWrite(Collections.emptyList(), true);
+        jdbcTemplate.execute(
+                (Connection connection) -> connection.prepareStatement(INSERT, new String[]{"id"}),
+                (PreparedStatement ps) -> {
+                    for (Product product : products) {
+                        ps.setString(1, product.getName());
+                        ps.setString(2, product.getDescription());
+                        ps.setString(3, product.getDetails());
+                        ps.setInt(4, product.getQuantity());
+                        ps.setBigDecimal(5, product.getPrice().getAmount());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                        for (int i = 0; generatedKeys.next(); i++)
+                            products.get(i).setId(generatedKeys.getLong(1));
+                    }
+                    return null;
+                });
+    }
+
+    private void evictAfterWrite(Collection<Long> productIds, boolean queryResults) {
+        evict(productIds, queryResults);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(productIds, queryResults);
+                }
+            });
+        }
+    }
+
+    private void evict(Collection<Long> productIds, boolean queryResults) {
+        final javax.persistence.Cache cache = entityManagerFactory.getCache();
+        for (Long productId : productIds)
+            cache.evict(Product.class, productId);
+        if (queryResults)
+            entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions();
+    }
+}
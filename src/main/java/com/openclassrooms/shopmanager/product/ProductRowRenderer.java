@@ -0,0 +1,95 @@
+package com.openclassrooms.shopmanager.product;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.HtmlUtils;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Renders the rows of the catalog table from the {@code productRow} fragment once per product and locale, for as long
+ * as the product displays the same values, and assembles the rows of each page from the cached ones. When stock is
+ * sold or restocked, only the rows of the products that changed are rendered again.
+ * <p>
+ * Rows are rendered outside of any request, so they hold nothing of the session: the CSRF field of their add to cart
+ * form is written into each copy served.
+ */
+@Component
+public class ProductRowRenderer {
+
+    public static final String PRODUCT_ROWS_CACHE = "productRows";
+
+    static final String ROW_FRAGMENT = "productRow";
+
+    // Written by the fragment where the CSRF field goes, and cut out of the cached row
+    private static final String CSRF_FIELD_MARKER = "<!--csrf-->";
+
+    private static final int ROW_LENGTH_ESTIMATE = 640;
+
+    private ITemplateEngine templateEngine;
+
+    private Cache rowCache;
+
+    private String addToCartUrl;
+
+    @Autowired
+    public ProductRowRenderer(ITemplateEngine templateEngine, CacheManager cacheManager,
+                              @Value("${server.servlet.context-path:}") String contextPath) {
+        this.templateEngine = templateEngine;
+        this.rowCache = cacheManager.getCache(PRODUCT_ROWS_CACHE);
+        this.addToCartUrl = contextPath + "/order/addToCart";
+    }
+
+    /**
+     * @param products  products of the page, in display order
+     * @param locale    locale of the labels
+     * @param csrfToken token of the session, which the forms of the rows post back, or null if there is none
+     * @return HTML of the table rows of the products
+     */
+    public String render(List<ProductSummary> products, Locale locale, CsrfToken csrfToken) {
+        final String csrfField = csrfToken == null ? "" : "<input type=\"hidden\" name=\""
+                + HtmlUtils.htmlEscape(csrfToken.getParameterName()) + "\" value=\""
+                + HtmlUtils.htmlEscape(csrfToken.getToken()) + "\"/>";
+
+        final StringBuilder html = new StringBuilder(products.size() * ROW_LENGTH_ESTIMATE);
+        for (ProductSummary product : products) {
+            final RenderedRow row = rowCache.get(Arrays.asList(locale, product), () -> renderRow(product, locale));
+            html.append(row.head).append(csrfField).append(row.tail);
+        }
+        return html.toString();
+    }
+
+    private RenderedRow renderRow(ProductSummary product, Locale locale) {
+        final Context context = new Context(locale);
+        context.setVariable("prod", product);
+        context.setVariable("addToCartUrl", addToCartUrl);
+        context.setVariable("csrfField", CSRF_FIELD_MARKER);
+        final String html = templateEngine.process("fragments", Collections.singleton(ROW_FRAGMENT), context);
+
+        final int marker = html.indexOf(CSRF_FIELD_MARKER);
+        return new RenderedRow(html.substring(0, marker), html.substring(marker + CSRF_FIELD_MARKER.length()));
+    }
+
+    /**
+     * Row rendered for a product, split where the CSRF field of the request goes.
+     */
+    private static class RenderedRow {
+
+        private final String head;
+        private final String tail;
+
+        private RenderedRow(String head, String tail) {
+            this.head = head;
+            this.tail = tail;
+        }
+    }
+}
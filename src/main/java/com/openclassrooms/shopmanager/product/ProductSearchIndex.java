@@ -0,0 +1,448 @@
+package com.openclassrooms.shopmanager.product;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over the name, description and details of the products. It is built from the database
+ * when the application starts, then kept up to date by {@link ProductService}, so that searches never hit the
+ * database.
+ * <p>
+ * Every query term must match a product, either exactly or as the prefix of one of its words. Products are ranked by
+ * the sum, over the query terms, of the term frequency weighted by the field it appears in, times the inverse
+ * document frequency of the term. Prefix matches count half as much as exact matches.
+ */
+@Component
+public class ProductSearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    static final float NAME_WEIGHT = 3f;
+    static final float DESCRIPTION_WEIGHT = 2f;
+    static final float DETAILS_WEIGHT = 1f;
+    static final float PREFIX_MATCH_FACTOR = 0.5f;
+
+    /**
+     * Shorter query terms only match exactly, as their prefix expansion would cover most of the vocabulary
+     */
+    static final int MIN_PREFIX_LENGTH = 2;
+    static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    private static final int BUILD_FETCH_SIZE = 1000;
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Postings> postingsByTerm = new TreeMap<>();
+    private final Set<Long> documentIds = new HashSet<>();
+    private final Set<Long> removedIds = new HashSet<>();
+
+    private final ProductRepository productRepository;
+
+    @Autowired
+    public ProductSearchIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    /**
+     * (Re)builds the whole index from the products stored in the database. The write lock is held until the last
+     * product is read: products added or removed meanwhile are applied once the rebuild is done, instead of between
+     * the clearing of the index and the reading of the products.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        final long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            postingsByTerm.clear();
+            documentIds.clear();
+            removedIds.clear();
+            productRepository.forEachProduct(BUILD_FETCH_SIZE, this::add);
+            log.info("Indexed {} products ({} terms) in {} ms", documentIds.size(), postingsByTerm.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a product to the index. The product must have an id. Adding a product already indexed, such as one created
+     * while the index was rebuilt, replaces its weights without counting it twice.
+     *
+     * @param product product to index
+     */
+    public void add(Product product) {
+        final Map<String, Float> termWeights = new HashMap<>();
+        addTerms(termWeights, product.getName(), NAME_WEIGHT);
+        addTerms(termWeights, product.getDescription(), DESCRIPTION_WEIGHT);
+        addTerms(termWeights, product.getDetails(), DETAILS_WEIGHT);
+
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<String, Float> termWeight : termWeights.entrySet())
+                postingsByTerm.computeIfAbsent(termWeight.getKey(), term -> new Postings())
+                        .add(product.getId(), termWeight.getValue());
+            documentIds.add(product.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a product from the index. Its postings are only marked as removed, and are purged once removed products
+     * make up a tenth of the index.
+     *
+     * @param productId ID of the product to remove
+     */
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            if (documentIds.remove(productId))
+                removedIds.add(productId);
+            if (removedIds.size() > Math.max(1000, documentIds.size() / 10))
+                purgeRemoved();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Searches the products matching every term of the query.
+     *
+     * @param query text typed by the user
+     * @param limit maximum number of results
+     * @return IDs of the best matching products, best match first
+     */
+    public List<Long> search(String query, int limit) {
+        final Set<String> queryTerms = new LinkedHashSet<>(tokenize(query));
+        if (queryTerms.isEmpty() || limit <= 0)
+            return Collections.emptyList();
+
+        lock.readLock().lock();
+        try {
+            final List<List<TermMatch>> matchesByQueryTerm = new ArrayList<>();
+            for (String queryTerm : queryTerms) {
+                final List<TermMatch> matches = findMatches(queryTerm);
+                if (matches.isEmpty())
+                    return Collections.emptyList();
+                matchesByQueryTerm.add(matches);
+            }
+            // Starting with the most selective term keeps the intersected score map small
+            matchesByQueryTerm.sort(Comparator.comparingInt(ProductSearchIndex::candidateCount));
+
+            Candidates candidates = collect(matchesByQueryTerm.get(0));
+            for (List<TermMatch> matches : matchesByQueryTerm.subList(1, matchesByQueryTerm.size())) {
+                if (candidates.size == 0)
+                    break;
+                candidates = intersect(candidates, matches);
+            }
+            return topResults(candidates, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of products in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits a text into lower case words without diacritics.
+     *
+     * @param text text to split, may be null
+     * @return the words of the text, in order
+     */
+    static List<String> tokenize(String text) {
+        final List<String> tokens = new ArrayList<>();
+        if (text == null)
+            return tokens;
+
+        final String normalized = normalize(text);
+        int tokenStart = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            final boolean letterOrDigit = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letterOrDigit && tokenStart < 0) {
+                tokenStart = i;
+            } else if (!letterOrDigit && tokenStart >= 0) {
+                tokens.add(normalized.substring(tokenStart, i));
+                tokenStart = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static String normalize(String text) {
+        final String lowerCase = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lowerCase.length(); i++) {
+            if (lowerCase.charAt(i) > 127)
+                return DIACRITICS.matcher(Normalizer.normalize(lowerCase, Normalizer.Form.NFD)).replaceAll("");
+        }
+        return lowerCase;
+    }
+
+    private static void addTerms(Map<String, Float> termWeights, String text, float fieldWeight) {
+        for (String term : tokenize(text))
+            termWeights.merge(term, fieldWeight, Float::sum);
+    }
+
+    private List<TermMatch> findMatches(String queryTerm) {
+        final List<TermMatch> matches = new ArrayList<>();
+        final Postings exactPostings = postingsByTerm.get(queryTerm);
+        if (exactPostings != null)
+            matches.add(new TermMatch(exactPostings, 1f));
+
+        if (queryTerm.length() >= MIN_PREFIX_LENGTH) {
+            final SortedMap<String, Postings> prefixed =
+                    postingsByTerm.subMap(queryTerm, false, queryTerm + Character.MAX_VALUE, false);
+            int expansions = 0;
+            for (Postings postings : prefixed.values()) {
+                if (expansions++ == MAX_PREFIX_EXPANSIONS)
+                    break;
+                matches.add(new TermMatch(postings, PREFIX_MATCH_FACTOR));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Scores the products matching the first query term, merging the postings of its exact and prefix matches.
+     */
+    private Candidates collect(List<TermMatch> matches) {
+        List<Candidates> merged = new ArrayList<>();
+        for (TermMatch match : matches)
+            merged.add(fromPostings(match));
+        // Merging pairwise keeps the cost at n log(k) for k expansions of a prefix
+        while (merged.size() > 1) {
+            final List<Candidates> nextRound = new ArrayList<>();
+            for (int i = 0; i < merged.size(); i += 2)
+                nextRound.add(i + 1 < merged.size() ? union(merged.get(i), merged.get(i + 1)) : merged.get(i));
+            merged = nextRound;
+        }
+        return merged.get(0);
+    }
+
+    private Candidates fromPostings(TermMatch match) {
+        final Postings postings = match.postings;
+        final float factor = idf(postings) * match.factor;
+        final Candidates candidates = new Candidates(postings.size);
+        for (int i = 0; i < postings.size; i++) {
+            final long productId = postings.ids[i];
+            if (removedIds.isEmpty() || !removedIds.contains(productId))
+                candidates.append(productId, postings.weights[i] * factor);
+        }
+        return candidates;
+    }
+
+    private static Candidates union(Candidates first, Candidates second) {
+        final Candidates union = new Candidates(first.size + second.size);
+        int i = 0;
+        int j = 0;
+        while (i < first.size || j < second.size) {
+            if (j == second.size || (i < first.size && first.ids[i] < second.ids[j])) {
+                union.append(first.ids[i], first.scores[i]);
+                i++;
+            } else if (i == first.size || second.ids[j] < first.ids[i]) {
+                union.append(second.ids[j], second.scores[j]);
+                j++;
+            } else {
+                union.append(first.ids[i], first.scores[i] + second.scores[j]);
+                i++;
+                j++;
+            }
+        }
+        return union;
+    }
+
+    /**
+     * Keeps the candidates that also match the given query term, adding the score of the term. Both sides are sorted
+     * by id, so each side skips ahead of the other with a galloping search.
+     */
+    private Candidates intersect(Candidates candidates, List<TermMatch> matches) {
+        final float[] termScores = new float[candidates.size];
+        for (TermMatch match : matches) {
+            final Postings postings = match.postings;
+            final float factor = idf(postings) * match.factor;
+            int i = 0;
+            int j = 0;
+            while (i < candidates.size && j < postings.size) {
+                final long candidateId = candidates.ids[i];
+                final long postingId = postings.ids[j];
+                if (candidateId == postingId) {
+                    termScores[i] += postings.weights[j] * factor;
+                    i++;
+                    j++;
+                } else if (candidateId < postingId) {
+                    i = gallop(candidates.ids, i + 1, candidates.size, postingId);
+                } else {
+                    j = gallop(postings.ids, j + 1, postings.size, candidateId);
+                }
+            }
+        }
+
+        final Candidates matching = new Candidates(candidates.size);
+        for (int i = 0; i < candidates.size; i++) {
+            if (termScores[i] > 0)
+                matching.append(candidates.ids[i], candidates.scores[i] + termScores[i]);
+        }
+        return matching;
+    }
+
+    /**
+     * @return index of the first id greater than or equal to the target in {@code ids[from, to)}, or {@code to}
+     */
+    private static int gallop(long[] ids, int from, int to, long target) {
+        int low = from;
+        int high = from;
+        int step = 1;
+        while (high < to && ids[high] < target) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        final int index = Arrays.binarySearch(ids, low, Math.min(high, to), target);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private float idf(Postings postings) {
+        return (float) Math.log(1 + (double) Math.max(documentIds.size(), 1) / postings.size);
+    }
+
+    private static List<Long> topResults(Candidates candidates, int limit) {
+        final Comparator<Hit> ranking = Comparator.<Hit>comparingDouble(hit -> hit.score)
+                .thenComparing(Comparator.<Hit>comparingLong(hit -> hit.productId).reversed());
+        final PriorityQueue<Hit> best = new PriorityQueue<>(ranking);
+        for (int i = 0; i < candidates.size; i++) {
+            final long productId = candidates.ids[i];
+            final float score = candidates.scores[i];
+            if (best.size() < limit) {
+                best.add(new Hit(productId, score));
+            } else if (score > best.peek().score) {
+                best.poll();
+                best.add(new Hit(productId, score));
+            }
+        }
+
+        final Long[] results = new Long[best.size()];
+        for (int i = results.length - 1; i >= 0; i--)
+            results[i] = best.poll().productId;
+        return Arrays.asList(results);
+    }
+
+    private static int candidateCount(List<TermMatch> matches) {
+        int count = 0;
+        for (TermMatch match : matches)
+            count += match.postings.size;
+        return count;
+    }
+
+    private void purgeRemoved() {
+        final Iterator<Postings> iterator = postingsByTerm.values().iterator();
+        while (iterator.hasNext()) {
+            final Postings postings = iterator.next();
+            postings.removeAll(removedIds);
+            if (postings.size == 0)
+                iterator.remove();
+        }
+        removedIds.clear();
+    }
+
+    /**
+     * Products containing a term, sorted by id and stored in parallel primitive arrays to keep the index compact.
+     * Products are almost always indexed in increasing id order, so adding one is usually a plain append.
+     */
+    private static final class Postings {
+        private long[] ids = new long[2];
+        private float[] weights = new float[2];
+        private int size;
+
+        private void add(long id, float weight) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            int index = size;
+            if (size > 0 && ids[size - 1] >= id) {
+                index = Arrays.binarySearch(ids, 0, size, id);
+                if (index >= 0) {
+                    weights[index] = weight;
+                    return;
+                }
+                index = -index - 1;
+                System.arraycopy(ids, index, ids, index + 1, size - index);
+                System.arraycopy(weights, index, weights, index + 1, size - index);
+            }
+            ids[index] = id;
+            weights[index] = weight;
+            size++;
+        }
+
+        private void removeAll(Set<Long> removedIds) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!removedIds.contains(ids[i])) {
+                    ids[kept] = ids[i];
+                    weights[kept] = weights[i];
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+    }
+
+    /**
+     * Products matching the query terms processed so far, sorted by id, with their score.
+     */
+    private static final class Candidates {
+        private final long[] ids;
+        private final float[] scores;
+        private int size;
+
+        private Candidates(int capacity) {
+            ids = new long[capacity];
+            scores = new float[capacity];
+        }
+
+        private void append(long id, float score) {
+            ids[size] = id;
+            scores[size] = score;
+            size++;
+        }
+    }
+
+    private static final class Hit {
+        private final long productId;
+        private final float score;
+
+        private Hit(long productId, float score) {
+            this.productId = productId;
+            this.score = score;
+        }
+    }
+
+    private static final class TermMatch {
+        private final Postings postings;
+        private final float factor;
+
+        private TermMatch(Postings postings, float factor) {
+            this.postings = postings;
+            this.factor = factor;
+        }
+    }
+}
@@ -1,62 +1,217 @@
 package com.openclassrooms.shopmanager.product;
 
+import com.openclassrooms.shopmanager.money.Money;
 import com.openclassrooms.shopmanager.order.Cart;
 import com.openclassrooms.shopmanager.order.CartLine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Service
 public class ProductService {
     private static final Logger log = LoggerFactory.getLogger(ProductService.class);
 
+    public static final String PRODUCT_CACHE = "product";
+    public static final String PRODUCTS_CACHE = "products";
+    public static final String ADMIN_PRODUCTS_CACHE = "adminProducts";
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
     private ProductRepository productRepository;
+    private CacheManager cacheManager;
+    private ProductSearchIndex searchIndex;
+    private StockReservationLedger reservationLedger;
+    private CatalogVersion catalogVersion;
+    private MeterRegistry meterRegistry;
+
+    // Cached reads only reach these timers on a cache miss, the cache meters give the hit rate
+    private final Timer allProductsTimer;
+    private final Timer allAdminProductsTimer;
+    private final Timer productsPageTimer;
+    private final Timer adminProductsPageTimer;
+    private final Timer searchTimer;
+    private final Timer productTimer;
+    private final DistributionSummary stockRowsUpdated;
 
     @Autowired
-    public ProductService(ProductRepository repository) {
+    public ProductService(ProductRepository repository, CacheManager cacheManager, ProductSearchIndex searchIndex,
+                          StockReservationLedger reservationLedger, CatalogVersion catalogVersion,
+                          MeterRegistry meterRegistry) {
         this.productRepository = repository;
+        this.cacheManager = cacheManager;
+        this.searchIndex = searchIndex;
+        this.reservationLedger = reservationLedger;
+        this.catalogVersion = catalogVersion;
+        this.meterRegistry = meterRegistry;
+
+        allProductsTimer = queryTimer("all");
+        allAdminProductsTimer = queryTimer("adminAll");
+        productsPageTimer = queryTimer("page");
+        adminProductsPageTimer = queryTimer("adminPage");
+        searchTimer = queryTimer("search");
+        productTimer = queryTimer("product");
+        stockRowsUpdated = DistributionSummary.builder("shop.stock.update.rows")
+                .description("Products whose stock was decremented by one update")
+                .baseUnit("rows")
+                .register(meterRegistry);
+    }
+
+    private Timer queryTimer(String query) {
+        return Timer.builder("shop.catalog.query")
+                .description("Catalog queries that reached the database")
+                .tag("query", query)
+                .register(meterRegistry);
     }
 
     /**
      * @return all products from the inventory
      */
+    @Cacheable(PRODUCTS_CACHE)
     public List<Product> getAllProducts() {
 
-        return productRepository.findAll();
+        return allProductsTimer.record(() -> productRepository.findAllByStatusNot(ProductStatus.RETIRED));
     }
 
+    @Cacheable(ADMIN_PRODUCTS_CACHE)
     public List<Product> getAllAdminProducts() {
 
-        return productRepository.findAllByOrderByIdDesc();
+        return allAdminProductsTimer.record(() -> productRepository.findAllByStatusNotOrderByIdDesc(ProductStatus.RETIRED));
+    }
+
+    /**
+     * Returns the products whose id is greater than the cursor, in ascending id order.
+     *
+     * @param after cursor returned with the previous page, or null to get the first page
+     * @param size  maximum number of products to return, capped to {@link #MAX_PAGE_SIZE}
+     * @return the requested page of products
+     */
+    @Cacheable(cacheNames = PRODUCTS_CACHE, key = "{#after, #size}")
+    @Transactional(readOnly = true)
+    public ProductPage getProductsPage(Long after, int size) {
+        final int pageSize = clampPageSize(size);
+        final long cursor = after != null ? after : 0L;
+        final List<ProductSummary> products = productsPageTimer.record(() ->
+                productRepository.findSummariesAfter(cursor, PageRequest.of(0, pageSize + 1)));
+        return toPage(products, pageSize);
+    }
+
+    /**
+     * Returns the products whose id is lower than the cursor, in descending id order.
+     *
+     * @param before cursor returned with the previous page, or null to get the first page
+     * @param size   maximum number of products to return, capped to {@link #MAX_PAGE_SIZE}
+     * @return the requested page of products
+     */
+    @Cacheable(cacheNames = ADMIN_PRODUCTS_CACHE, key = "{#before, #size}")
+    @Transactional(readOnly = true)
+    public ProductPage getAdminProductsPage(Long before, int size) {
+        final int pageSize = clampPageSize(size);
+        final long cursor = before != null ? before : Long.MAX_VALUE;
+        final List<ProductSummary> products = adminProductsPageTimer.record(() ->
+                productRepository.findSummariesBefore(cursor, PageRequest.of(0, pageSize + 1)));
+        return toPage(products, pageSize);
+    }
+
+    private static int clampPageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
     }
 
+    /**
+     * Builds a page from a query that fetched one product more than the page size, to know if a next page exists.
+     */
+    private static ProductPage toPage(List<ProductSummary> products, int pageSize) {
+        if (products.size() <= pageSize)
+            return new ProductPage(products, null, pageSize);
+
+        final List<ProductSummary> pageProducts = new ArrayList<>(products.subList(0, pageSize));
+        return new ProductPage(pageProducts, pageProducts.get(pageSize - 1).getId(), pageSize);
+    }
+
+    /**
+     * Searches the products matching every word of the query, using the in-memory {@link ProductSearchIndex}. Only
+     * the matching products are loaded from the database, by primary key.
+     *
+     * @param query text typed by the user
+     * @param limit maximum number of products to return, capped to {@link #MAX_PAGE_SIZE}
+     * @return the matching products, best match first
+     */
+    @Transactional(readOnly = true)
+    public List<ProductSummary> searchProducts(String query, int limit) {
+        return searchTimer.record(() -> findMatchingProducts(query, limit));
+    }
+
+    private List<ProductSummary> findMatchingProducts(String query, int limit) {
+        final List<Long> productIds = searchIndex.search(query, clampPageSize(limit));
+        if (productIds.isEmpty())
+            return Collections.emptyList();
+
+        final Map<Long, ProductSummary> productsById = new HashMap<>();
+        for (ProductSummary product : productRepository.findSummariesByIdIn(productIds))
+            productsById.put(product.getId(), product);
+
+        final List<ProductSummary> products = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            final ProductSummary product = productsById.get(productId);
+            if (product != null)
+                products.add(product);
+        }
+        return products;
+    }
+
+    @Cacheable(cacheNames = PRODUCT_CACHE, unless = "#result == null")
     public Product getByProductId(Long productId) {
-        return productRepository.findById(productId).orElse(null);
+        return productTimer.record(() -> productRepository.findById(productId)
+                .filter(product -> product.getStatus() != ProductStatus.RETIRED)
+                .orElse(null));
     }
 
     /**
      * Creates a product and stores it in the database.
      *
-     * @param productModel Product to create and store
+     * @param productModel Product to create and store, which must pass {@link #checkProductIsValid(ProductModel)}
      */
+    @CacheEvict(cacheNames = {PRODUCTS_CACHE, ADMIN_PRODUCTS_CACHE}, allEntries = true)
     public void createProduct(ProductModel productModel) {
-        Product product = new Product();
-        product.setDescription(productModel.getDescription());
-        product.setDetails(productModel.getDetails());
-        product.setName(productModel.getName());
-        product.setPrice(Double.parseDouble(productModel.getPrice()));
-        product.setQuantity(Integer.parseInt(productModel.getQuantity()));
+        createProduct(validateProduct(productModel));
+    }
 
-        productRepository.save(product);
+    /**
+     * Creates a product from fields that were already validated and parsed, and stores it in the database.
+     *
+     * @param validatedProduct Product to create and store
+     * @throws IllegalStateException if the product did not pass validation
+     */
+    @CacheEvict(cacheNames = {PRODUCTS_CACHE, ADMIN_PRODUCTS_CACHE}, allEntries = true)
+    public void createProduct(ValidatedProduct validatedProduct) {
+        searchIndex.add(productRepository.save(validatedProduct.toProduct()));
+        catalogVersion.bump();
     }
 
     /**
      * Determines if a string is a valid representation of a double.
+     * Product validation does not use it, as it relies on a {@link NumberFormatException} for invalid strings; see
+     * {@link #validateProduct}.
      *
      * @param potentialDouble String to check
      * @return True if the string is a double, false otherwise
@@ -77,12 +232,7 @@ public class ProductService {
      * @return True if the string is an integer, false otherwise
      */
     public boolean isStringInteger(final String potentialInt) {
-        try {
-            Integer.parseInt(potentialInt);
-        } catch (NumberFormatException nfe) {
-            return false;
-        }
-        return true;
+        return potentialInt != null && ProductFieldParser.parseInteger(potentialInt) != ProductFieldParser.NOT_A_NUMBER;
     }
 
     /**
@@ -93,48 +243,166 @@ public class ProductService {
      * @return List of validation errors associated with the specified product, which may be empty, indicating no errors
      */
     public List<String> checkProductIsValid(final ProductModel productModel) {
-        final List<String> errors = new LinkedList<>();
-        if (productModel.getName() == null || productModel.getName().trim().isEmpty())
-            errors.add("product.MissingName");
+        return validateProduct(productModel).getErrors();
+    }
 
-        if (productModel.getPrice() == null || productModel.getPrice().trim().isEmpty())
-            errors.add("product.MissingPrice");
-        else if (!isStringDouble(productModel.getPrice()))
-            errors.add("product.PriceNotANumber");
-        else if (Double.valueOf(productModel.getPrice()) <= 0D)
-            errors.add("product.PriceNotGreaterThanZero");
+    /**
+     * Validates a product and parses its price and quantity, so that a valid product can be passed on to
+     * {@link #createProduct(ValidatedProduct)} without being parsed again.
+     *
+     * @param productModel Product to validate
+     * @return the validation errors, or the parsed product
+     */
+    public ValidatedProduct validateProduct(final ProductModel productModel) {
+        return validateProduct(productModel, new ValidatedProduct());
+    }
 
-        if (productModel.getQuantity() == null || productModel.getQuantity().trim().isEmpty())
-            errors.add("product.MissingQuantity");
-        else if (!isStringInteger(productModel.getQuantity()))
-            errors.add("product.QuantityNotAnInteger");
-        else if (Integer.valueOf(productModel.getQuantity()) <= 0)
-            errors.add("product.QuantityNotGreaterThanZero");
+    /**
+     * Same as {@link #validateProduct(ProductModel)}, reusing a {@link ValidatedProduct}. Each field is read once and
+     * a valid product allocates nothing but its price.
+     *
+     * @param productModel Product to validate
+     * @param target       outcome of a previous validation, overwritten
+     * @return the target
+     */
+    public ValidatedProduct validateProduct(final ProductModel productModel, final ValidatedProduct target) {
+        target.reset(productModel);
+        if (ProductFieldParser.isBlank(productModel.getName()))
+            target.addError("product.MissingName");
+
+        if (ProductFieldParser.isBlank(productModel.getPrice())) {
+            target.addError("product.MissingPrice");
+        } else {
+            final long price = ProductFieldParser.parsePrice(productModel.getPrice());
+            if (price == ProductFieldParser.NOT_A_NUMBER)
+                target.addError("product.PriceNotANumber");
+            else if (price == ProductFieldParser.TOO_LARGE)
+                target.addError("product.PriceTooHigh");
+            else if (price <= 0)
+                target.addError("product.PriceNotGreaterThanZero");
+            else
+                target.setPrice(Money.ofMinor(price));
+        }
+
+        if (ProductFieldParser.isBlank(productModel.getQuantity())) {
+            target.addError("product.MissingQuantity");
+        } else {
+            final long quantity = ProductFieldParser.parseInteger(productModel.getQuantity());
+            if (quantity == ProductFieldParser.NOT_A_NUMBER)
+                target.addError("product.QuantityNotAnInteger");
+            else if (quantity <= 0)
+                target.addError("product.QuantityNotGreaterThanZero");
+            else
+                target.setQuantity((int) quantity);
+        }
 
-        return errors;
+        return target;
     }
 
     /**
-     * Removes a product from the database. The product is not removed from the cart, that must be done by the caller.
+     * Removes a product from the catalog. It is retired rather than deleted from the database, so that past orders keep
+     * their lines. The product is not removed from the cart, that must be done by the caller; checking out a cart that
+     * still holds it fails as if it had no stock left.
      * @param productId ID of the product to delete
      */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = PRODUCT_CACHE, key = "#productId"),
+            @CacheEvict(cacheNames = {PRODUCTS_CACHE, ADMIN_PRODUCTS_CACHE}, allEntries = true)
+    })
     public void deleteProduct(Long productId) {
-        productRepository.deleteById(productId);
+        productRepository.retire(productId);
+        searchIndex.remove(productId);
+        reservationLedger.forget(productId);
+        catalogVersion.bump();
+    }
+
+    /**
+     * Adds units to the stock of a product, listing it again in the catalog if it was out of stock.
+     *
+     * @param productId ID of the product to restock
+     * @param quantity  number of units to add, greater than zero
+     * @return true if the product was restocked, false if it does not exist
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = PRODUCT_CACHE, key = "#productId"),
+            @CacheEvict(cacheNames = {PRODUCTS_CACHE, ADMIN_PRODUCTS_CACHE}, allEntries = true)
+    })
+    public boolean restockProduct(Long productId, int quantity) {
+        if (quantity <= 0)
+            throw new IllegalArgumentException("Quantity must be greater than zero: " + quantity);
+        if (productRepository.restock(productId, quantity) == 0)
+            return false;
+        reservationLedger.addStock(productId, quantity);
+        catalogVersion.bump();
+        return true;
     }
 
+    /**
+     * Removes the quantities in the cart from the stock, and marks the products that have no stock left as out of
+     * stock, which removes them from the catalog. All the
+     * decrements are sent in one batch of conditional updates, so concurrent checkouts cannot oversell a product.
+     *
+     * @param cart Cart whose quantities are to be removed from the stock
+     * @throws InsufficientStockException if a product does not exist or does not have enough stock left, in which case
+     *                                    no quantity is modified
+     */
+    @Transactional
+    @CacheEvict(cacheNames = {PRODUCTS_CACHE, ADMIN_PRODUCTS_CACHE}, allEntries = true)
     public void updateProductQuantities(Cart cart) {
+        final Map<Long, Integer> quantitiesByProductId = new HashMap<>();
+        for (CartLine cartLine : cart.getCartLineList())
+            quantitiesByProductId.merge(cartLine.getProduct().getId(), cartLine.getQuantity(), Integer::sum);
+        decrementStock(quantitiesByProductId);
+    }
 
-        for (CartLine cartLine : cart.getCartLineList()) {
-            Optional<Product> productOptional = productRepository.findById(cartLine.getProduct().getId());
-            if (productOptional.isPresent()) {
-                Product product = productOptional.get();
-                product.setQuantity(product.getQuantity() - cartLine.getQuantity());
-                if (product.getQuantity() < 1) {
-                    productRepository.delete(product);
-                } else {
-                    productRepository.save(product);
-                }
+    /**
+     * Same as {@link #updateProductQuantities(Cart)}, for quantities summed over any number of orders.
+     *
+     * @param quantitiesByProductId quantity to remove from the stock of each product
+     * @throws InsufficientStockException if a product does not exist or does not have enough stock left, in which case
+     *                                    no quantity is modified
+     */
+    @Transactional
+    @CacheEvict(cacheNames = {PRODUCTS_CACHE, ADMIN_PRODUCTS_CACHE}, allEntries = true)
+    public void updateProductQuantities(Map<Long, Integer> quantitiesByProductId) {
+        decrementStock(quantitiesByProductId);
+    }
+
+    private void decrementStock(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty())
+            return;
+
+        // Sorted by id, so that concurrent checkouts always lock the product rows in the same order
+        final Map<Long, Integer> quantitiesByProductId = new TreeMap<>(quantities);
+        try {
+            final int[] updateCounts = productRepository.decrementQuantities(quantitiesByProductId);
+            final Iterator<Long> productIds = quantitiesByProductId.keySet().iterator();
+            for (int updateCount : updateCounts) {
+                final Long productId = productIds.next();
+                if (updateCount == 0)
+                    throw new InsufficientStockException(productId);
             }
+        } catch (RuntimeException e) {
+            stockUpdateFailures(e).increment();
+            throw e;
         }
+        stockRowsUpdated.record(quantitiesByProductId.size());
+
+        productRepository.markOutOfStock(quantitiesByProductId.keySet());
+        evictProducts(quantitiesByProductId.keySet());
+        catalogVersion.bump();
+    }
+
+    private Counter stockUpdateFailures(RuntimeException cause) {
+        return Counter.builder("shop.stock.update.failures")
+                .description("Stock updates rolled back, by cause")
+                .tag("cause", cause.getClass().getSimpleName())
+                .register(meterRegistry);
+    }
+
+    private void evictProducts(Iterable<Long> productIds) {
+        final Cache productCache = cacheManager.getCache(PRODUCT_CACHE);
+        if (productCache != null)
+            productIds.forEach(productCache::evict);
     }
 }
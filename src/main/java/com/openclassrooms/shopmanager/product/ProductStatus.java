@@ -0,0 +1,14 @@
+package com.openclassrooms.shopmanager.product;
+
+/**
+ * Whether a product is listed in the catalog. Products that run out of stock or are deleted by an administrator are
+ * kept, so that order lines still reference them and restocking them is a single update.
+ */
+public enum ProductStatus {
+    ACTIVE,
+    OUT_OF_STOCK,
+    /**
+     * Deleted from the catalog: listed nowhere, not sold nor restocked anymore
+     */
+    RETIRED
+}
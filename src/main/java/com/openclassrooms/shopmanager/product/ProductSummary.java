@@ -0,0 +1,63 @@
+package com.openclassrooms.shopmanager.product;
+
+import com.openclassrooms.shopmanager.money.Money;
+
+import java.util.Objects;
+
+/**
+ * Read-only view of a product holding only the columns displayed in the catalog listings. It is filled directly by
+ * the queries, so no entity is managed by the persistence context and the details are never loaded.
+ * <p>
+ * Summaries are equal when they display the same values, which is how {@link ProductRowRenderer} tells that the row
+ * it rendered for a product is still current.
+ */
+public class ProductSummary {
+
+    private final Long id;
+    private final String name;
+    private final String description;
+    private final Money price;
+    private final int quantity;
+
+    public ProductSummary(Long id, String name, String description, Money price, int quantity) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.price = price;
+        this.quantity = quantity;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Money getPrice() {
+        return price;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ProductSummary that = (ProductSummary) o;
+        return quantity == that.quantity && Objects.equals(id, that.id) && Objects.equals(name, that.name)
+                && Objects.equals(description, that.description) && Objects.equals(price, that.price);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, name, description, price, quantity);
+    }
+}
@@ -0,0 +1,274 @@
+package com.openclassrooms.shopmanager.product;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory ledger of the units held by carts, so that a product cannot be added to more carts than it has stock
+ * for. Each holder, usually a cart, holds a number of units of a product for a limited time; holds that are not
+ * renewed expire and their units become available to other holders.
+ * <p>
+ * Products are spread over a fixed number of stripes, each guarded by its own lock, so that reservations of different
+ * products rarely contend while the check and the update of a product stay atomic. The stock of a product is read
+ * from the product when the ledger first sees it, then kept up to date by {@link #commit(String, Map)}. Products
+ * that nobody holds are dropped by the periodic expiry, and read again later.
+ * <p>
+ * The ledger only protects the stock within this application instance: checkouts still decrement the stock with
+ * conditional updates, which remain the reference.
+ */
+@Component
+public class StockReservationLedger {
+
+    private final Stripe[] stripes;
+    private final long ttlMillis;
+
+    @Autowired
+    public StockReservationLedger(@Value("${shop.reservation.ttl-minutes:15}") long ttlMinutes,
+                                  @Value("${shop.reservation.stripes:64}") int stripeCount) {
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        // A power of two, so that the stripe of a product is found with a mask
+        final int size = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++)
+            stripes[i] = new Stripe();
+    }
+
+    /**
+     * Sets the number of units of a product held by a holder, and renews the hold for another TTL. Holding more units
+     * succeeds only if the stock not held by others is enough.
+     *
+     * @param holder  key of the holder, usually the cart key
+     * @param product product to hold, whose quantity is taken as its stock if the ledger does not know it yet
+     * @param units   total number of units the holder wants to hold
+     * @return true if the units are held, false if there is not enough stock left
+     */
+    public boolean hold(String holder, Product product, int units) {
+        return hold(holder, product, units, System.currentTimeMillis());
+    }
+
+    boolean hold(String holder, Product product, int units, long now) {
+        final Stripe stripe = stripeFor(product.getId());
+        synchronized (stripe) {
+            ProductStock stock = stripe.stocks.get(product.getId());
+            if (stock == null) {
+                stock = new ProductStock(product.getQuantity());
+                stripe.stocks.put(product.getId(), stock);
+            }
+            return stock.hold(holder, units, now + ttlMillis, now);
+        }
+    }
+
+    /**
+     * Releases every unit of a product held by a holder.
+     */
+    public void release(String holder, Long productId) {
+        final Stripe stripe = stripeFor(productId);
+        synchronized (stripe) {
+            final ProductStock stock = stripe.stocks.get(productId);
+            if (stock != null)
+                stock.release(holder);
+        }
+    }
+
+    /**
+     * Moves the units of a product held by a holder to another holder, and renews the hold for another TTL. The units
+     * stay held all along, so that no other holder can take them in between.
+     *
+     * @param fromHolder key of the current holder
+     * @param toHolder   key of the new holder, whose hold is added to if it already holds the product
+     * @param productId  id of the product
+     */
+    public void transfer(String fromHolder, String toHolder, Long productId) {
+        transfer(fromHolder, toHolder, productId, System.currentTimeMillis());
+    }
+
+    void transfer(String fromHolder, String toHolder, Long productId, long now) {
+        final Stripe stripe = stripeFor(productId);
+        synchronized (stripe) {
+            final ProductStock stock = stripe.stocks.get(productId);
+            if (stock != null)
+                stock.transfer(fromHolder, toHolder, now + ttlMillis);
+        }
+    }
+
+    /**
+     * Turns the holds of a holder into decrements of the stock, once they have been removed from the database stock.
+     *
+     * @param holder                key of the holder, usually the cart key
+     * @param quantitiesByProductId units removed from the stock of each product
+     */
+    public void commit(String holder, Map<Long, Integer> quantitiesByProductId) {
+        for (Map.Entry<Long, Integer> entry : quantitiesByProductId.entrySet()) {
+            final Stripe stripe = stripeFor(entry.getKey());
+            synchronized (stripe) {
+                final ProductStock stock = stripe.stocks.get(entry.getKey());
+                if (stock == null)
+                    continue;
+                stock.release(holder);
+                stock.stock -= entry.getValue();
+                // Out of stock products are read again if they are restocked
+                if (stock.stock <= 0)
+                    stripe.stocks.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Adds units to the stock of a product, after they were added to the database stock.
+     */
+    public void addStock(Long productId, int units) {
+        final Stripe stripe = stripeFor(productId);
+        synchronized (stripe) {
+            final ProductStock stock = stripe.stocks.get(productId);
+            if (stock != null)
+                stock.stock += units;
+        }
+    }
+
+    /**
+     * Drops what the ledger knows of a product, when its stock changed behind the ledger or it was deleted. Its stock
+     * is read again by the next hold, and the units held so far are no longer accounted for.
+     */
+    public void forget(Long productId) {
+        final Stripe stripe = stripeFor(productId);
+        synchronized (stripe) {
+            stripe.stocks.remove(productId);
+        }
+    }
+
+    /**
+     * @return units of the product not held by anyone, or -1 if the ledger does not know the product
+     */
+    public int available(Long productId) {
+        final Stripe stripe = stripeFor(productId);
+        synchronized (stripe) {
+            final ProductStock stock = stripe.stocks.get(productId);
+            return stock != null ? stock.stock - stock.reserved : -1;
+        }
+    }
+
+    /**
+     * Releases the expired holds and drops the products no longer held.
+     */
+    @Scheduled(fixedDelayString = "${shop.reservation.expiry-interval-ms:60000}")
+    public void expireHolds() {
+        expireHolds(System.currentTimeMillis());
+    }
+
+    /**
+     * @param now current time in milliseconds
+     * @return number of units released
+     */
+    int expireHolds(long now) {
+        int released = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                final Iterator<ProductStock> stocks = stripe.stocks.values().iterator();
+                while (stocks.hasNext()) {
+                    final ProductStock stock = stocks.next();
+                    released += stock.expire(now);
+                    if (stock.holds.isEmpty())
+                        stocks.remove();
+                }
+            }
+        }
+        return released;
+    }
+
+    private Stripe stripeFor(Long productId) {
+        final long id = productId;
+        final int hash = (int) (id ^ (id >>> 32));
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private static class Stripe {
+        private final Map<Long, ProductStock> stocks = new HashMap<>();
+    }
+
+    /**
+     * Stock of one product and the units held on it. Only accessed with the lock of its stripe held.
+     */
+    private static class ProductStock {
+        private int stock;
+        private int reserved;
+        private final Map<String, Hold> holds = new HashMap<>(4);
+
+        private ProductStock(int stock) {
+            this.stock = stock;
+        }
+
+        private boolean hold(String holder, int units, long expiresAt, long now) {
+            if (units - held(holder) > stock - reserved) {
+                // Expired holds, including one of this holder, free units before giving up
+                expire(now);
+                if (units - held(holder) > stock - reserved)
+                    return false;
+            }
+            if (units <= 0) {
+                release(holder);
+                return true;
+            }
+
+            Hold hold = holds.get(holder);
+            if (hold == null) {
+                hold = new Hold();
+                holds.put(holder, hold);
+            }
+            reserved += units - hold.units;
+            hold.units = units;
+            hold.expiresAt = expiresAt;
+            return true;
+        }
+
+        private void transfer(String fromHolder, String toHolder, long expiresAt) {
+            final Hold hold = holds.remove(fromHolder);
+            if (hold == null)
+                return;
+            Hold target = holds.get(toHolder);
+            if (target == null) {
+                target = hold;
+                holds.put(toHolder, target);
+            } else {
+                target.units += hold.units;
+            }
+            target.expiresAt = expiresAt;
+        }
+
+        private int held(String holder) {
+            final Hold hold = holds.get(holder);
+            return hold != null ? hold.units : 0;
+        }
+
+        private void release(String holder) {
+            final Hold hold = holds.remove(holder);
+            if (hold != null)
+                reserved -= hold.units;
+        }
+
+        private int expire(long now) {
+            int released = 0;
+            final Iterator<Hold> iterator = holds.values().iterator();
+            while (iterator.hasNext()) {
+                final Hold hold = iterator.next();
+                if (hold.expiresAt <= now) {
+                    released += hold.units;
+                    iterator.remove();
+                }
+            }
+            reserved -= released;
+            return released;
+        }
+    }
+
+    private static class Hold {
+        private int units;
+        private long expiresAt;
+    }
+}
@@ -0,0 +1,98 @@
+package com.openclassrooms.shopmanager.product;
+
+import com.openclassrooms.shopmanager.money.Money;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of {@link ProductService#validateProduct(ProductModel, ValidatedProduct)}: either the validation errors, or
+ * the fields of the product already parsed, ready to be stored. An instance can be reused for every row of a bulk
+ * import; the list of errors is never reused, so it can be kept after the next validation.
+ */
+public class ValidatedProduct {
+
+    private String name;
+    private String description;
+    private String details;
+    private Money price;
+    private int quantity;
+    private List<String> errors;
+
+    /**
+     * Clears the outcome of a previous validation and copies the text fields of the model.
+     */
+    void reset(ProductModel productModel) {
+        name = productModel.getName();
+        description = productModel.getDescription();
+        details = productModel.getDetails();
+        price = null;
+        quantity = 0;
+        errors = null;
+    }
+
+    void addError(String error) {
+        if (errors == null)
+            errors = new ArrayList<>(2);
+        errors.add(error);
+    }
+
+    void setPrice(Money price) {
+        this.price = price;
+    }
+
+    void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public boolean isValid() {
+        return errors == null;
+    }
+
+    /**
+     * @return the validation errors, which are mapped to error strings in the messages files, or an empty list
+     */
+    public List<String> getErrors() {
+        return errors != null ? errors : Collections.emptyList();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getDetails() {
+        return details;
+    }
+
+    /**
+     * @return the parsed price, or null if it is missing or invalid
+     */
+    public Money getPrice() {
+        return price;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * @return a new product with the validated fields
+     * @throws IllegalStateException if the validation failed
+     */
+    public Product toProduct() {
+        if (!isValid())
+            throw new IllegalStateException("Invalid product: " + errors);
+        Product product = new Product();
+        product.setName(name);
+        product.setDescription(description);
+        product.setDetails(details);
+        product.setPrice(price);
+        product.setQuantity(quantity);
+        return product;
+    }
+}
@@ -0,0 +1,60 @@
+package com.openclassrooms.shopmanager.report;
+
+import com.openclassrooms.shopmanager.money.Money;
+import com.openclassrooms.shopmanager.money.MoneyConverter;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDate;
+
+/**
+ * Totals of the orders placed on one day, kept up to date as orders are stored so that reports never read the order
+ * lines.
+ */
+@Entity
+@Table(name = "daily_sales")
+public class DailySales {
+
+    @Id
+    @Column(name = "sales_day")
+    private LocalDate day;
+
+    @Column(nullable = false)
+    private long orderCount;
+
+    @Column(nullable = false)
+    private long itemCount;
+
+    @Convert(converter = MoneyConverter.class)
+    @Column(nullable = false, precision = 19, scale = 2)
+    private Money revenue;
+
+    protected DailySales() {
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public long getItemCount() {
+        return itemCount;
+    }
+
+    public Money getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * @return average value of the orders of the day, rounded to the cent
+     */
+    public Money getAverageOrderValue() {
+        return orderCount > 0 ? revenue.dividedBy(orderCount) : Money.ZERO;
+    }
+}
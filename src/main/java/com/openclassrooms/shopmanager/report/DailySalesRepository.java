@@ -0,0 +1,16 @@
+package com.openclassrooms.shopmanager.report;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface DailySalesRepository extends JpaRepository<DailySales, LocalDate>, DailySalesRepositoryCustom {
+
+    /**
+     * @return the totals of the days of the range that had orders, in ascending day order
+     */
+    List<DailySales> findByDayBetweenOrderByDay(LocalDate from, LocalDate to);
+}
@@ -0,0 +1,45 @@
+package com.openclassrooms.shopmanager.report;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Increments and aggregates of the sales rollups, executed directly through JDBC.
+ */
+public interface DailySalesRepositoryCustom {
+
+    /**
+     * Adds totals to the {@link DailySales} of each given day, creating the rows of days without sales so far.
+     *
+     * @param totalsByDay totals to add, iterated in ascending day order so that concurrent transactions lock the rows
+     *                    in the same order
+     */
+    void addDailySales(Map<LocalDate, SalesTotals> totalsByDay);
+
+    /**
+     * Adds totals to the {@link ProductDailySales} of each given product, creating the missing rows.
+     *
+     * @param day               day the products were sold
+     * @param totalsByProductId units and revenue to add for each product, iterated in ascending id order
+     */
+    void addProductSales(LocalDate day, Map<Long, SalesTotals> totalsByProductId);
+
+    /**
+     * Sums the daily totals over a date range.
+     *
+     * @param from first day of the range
+     * @param to   last day of the range, included
+     */
+    SalesSummary sumDailySales(LocalDate from, LocalDate to);
+
+    /**
+     * Sums the daily sales of each product over a date range, and returns the products that sold the most units.
+     *
+     * @param from  first day of the range
+     * @param to    last day of the range, included
+     * @param limit maximum number of products to return
+     * @return the best selling products, by units sold then revenue
+     */
+    List<ProductSales> findTopProducts(LocalDate from, LocalDate to, int limit);
+}
@@ -0,0 +1,97 @@
+package com.openclassrooms.shopmanager.report;
+
+import com.openclassrooms.shopmanager.money.Money;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class DailySalesRepositoryImpl implements DailySalesRepositoryCustom {
+
+    private static final String ADD_DAILY_SALES =
+            "UPDATE daily_sales SET order_count = order_count + ?, item_count = item_count + ?, revenue = revenue + ? " +
+                    "WHERE sales_day = ?";
+
+    private static final String INSERT_DAILY_SALES =
+            "INSERT INTO daily_sales (order_count, item_count, revenue, sales_day) VALUES (?, ?, ?, ?)";
+
+    private static final String ADD_PRODUCT_SALES =
+            "UPDATE product_daily_sales SET quantity = quantity + ?, revenue = revenue + ? " +
+                    "WHERE sales_day = ? AND product_id = ?";
+
+    private static final String INSERT_PRODUCT_SALES =
+            "INSERT INTO product_daily_sales (quantity, revenue, sales_day, product_id) VALUES (?, ?, ?, ?)";
+
+    private static final String SUM_DAILY_SALES =
+            "SELECT COALESCE(SUM(order_count), 0), COALESCE(SUM(item_count), 0), COALESCE(SUM(revenue), 0) " +
+                    "FROM daily_sales WHERE sales_day BETWEEN ? AND ?";
+
+    private static final String TOP_PRODUCTS =
+            "SELECT s.product_id, p.name, SUM(s.quantity) AS units, SUM(s.revenue) AS revenue " +
+                    "FROM product_daily_sales s LEFT JOIN product p ON p.id = s.product_id " +
+                    "WHERE s.sales_day BETWEEN ? AND ? " +
+                    "GROUP BY s.product_id, p.name ORDER BY units DESC, revenue DESC, s.product_id LIMIT ?";
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    DailySalesRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void addDailySales(Map<LocalDate, SalesTotals> totalsByDay) {
+        final List<Object[]> rows = new ArrayList<>(totalsByDay.size());
+        totalsByDay.forEach((day, totals) -> rows.add(new Object[]{
+                totals.getOrderCount(), totals.getItemCount(), totals.getRevenue().getAmount(), Date.valueOf(day)}));
+        upsert(ADD_DAILY_SALES, INSERT_DAILY_SALES, rows);
+    }
+
+    @Override
+    public void addProductSales(LocalDate day, Map<Long, SalesTotals> totalsByProductId) {
+        final List<Object[]> rows = new ArrayList<>(totalsByProductId.size());
+        totalsByProductId.forEach((productId, totals) -> rows.add(new Object[]{
+                totals.getItemCount(), totals.getRevenue().getAmount(), Date.valueOf(day), productId}));
+        upsert(ADD_PRODUCT_SALES, INSERT_PRODUCT_SALES, rows);
+    }
+
+    /**
+     * Increments every row in one batch, then inserts the rows that did not exist yet. Both statements take the same
+     * arguments, the key columns last.
+     */
+    private void upsert(String update, String insert, List<Object[]> rows) {
+        if (rows.isEmpty())
+            return;
+
+        final int[] updateCounts = jdbcTemplate.batchUpdate(update, rows);
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] != 0)
+                continue;
+            try {
+                jdbcTemplate.update(insert, rows.get(i));
+            } catch (DuplicateKeyException e) {
+                // Inserted by a concurrent transaction that committed in between
+                jdbcTemplate.update(update, rows.get(i));
+            }
+        }
+    }
+
+    @Override
+    public SalesSummary sumDailySales(LocalDate from, LocalDate to) {
+        return jdbcTemplate.queryForObject(SUM_DAILY_SALES, (rs, rowNum) -> new SalesSummary(
+                from, to, rs.getLong(1), rs.getLong(2), Money.of(rs.getBigDecimal(3))),
+                Date.valueOf(from), Date.valueOf(to));
+    }
+
+    @Override
+    public List<ProductSales> findTopProducts(LocalDate from, LocalDate to, int limit) {
+        return jdbcTemplate.query(TOP_PRODUCTS, (rs, rowNum) -> new ProductSales(
+                rs.getLong(1), rs.getString(2), rs.getLong(3), Money.of(rs.getBigDecimal(4))),
+                Date.valueOf(from), Date.valueOf(to), limit);
+    }
+}
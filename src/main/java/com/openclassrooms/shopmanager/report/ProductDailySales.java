@@ -0,0 +1,85 @@
+package com.openclassrooms.shopmanager.report;
+
+import com.openclassrooms.shopmanager.money.Money;
+import com.openclassrooms.shopmanager.money.MoneyConverter;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Units of a product sold on one day, and the revenue they brought. The primary key starts with the day, so that the
+ * rows of a date range are read from a single index range.
+ */
+@Entity
+@Table(name = "product_daily_sales")
+@IdClass(ProductDailySales.Key.class)
+public class ProductDailySales {
+
+    @Id
+    @Column(name = "sales_day")
+    private LocalDate day;
+
+    @Id
+    private Long productId;
+
+    @Column(nullable = false)
+    private long quantity;
+
+    @Convert(converter = MoneyConverter.class)
+    @Column(nullable = false, precision = 19, scale = 2)
+    private Money revenue;
+
+    protected ProductDailySales() {
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public Money getRevenue() {
+        return revenue;
+    }
+
+    public static class Key implements Serializable {
+        private LocalDate day;
+        private Long productId;
+
+        public Key() {
+        }
+
+        public Key(LocalDate day, Long productId) {
+            this.day = day;
+            this.productId = productId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            final Key key = (Key) o;
+            return Objects.equals(day, key.day) && Objects.equals(productId, key.productId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(day, productId);
+        }
+    }
+}
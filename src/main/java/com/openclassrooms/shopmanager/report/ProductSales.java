@@ -0,0 +1,40 @@
+package com.openclassrooms.shopmanager.report;
+
+import com.openclassrooms.shopmanager.money.Money;
+
+/**
+ * Units of a product sold over a date range, and the revenue they brought.
+ */
+public class ProductSales {
+
+    private final Long productId;
+    private final String name;
+    private final long quantity;
+    private final Money revenue;
+
+    public ProductSales(Long productId, String name, long quantity, Money revenue) {
+        this.productId = productId;
+        this.name = name;
+        this.quantity = quantity;
+        this.revenue = revenue;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    /**
+     * @return name of the product, or null if it was deleted since
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public Money getRevenue() {
+        return revenue;
+    }
+}
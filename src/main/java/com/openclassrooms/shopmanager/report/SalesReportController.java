@@ -0,0 +1,94 @@
+package com.openclassrooms.shopmanager.report;
+
+import com.openclassrooms.shopmanager.order.OrderHistoryPage;
+import com.openclassrooms.shopmanager.order.OrderService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Sales reports and order history for administrators, as JSON. Every report covers the days from {@code from} to
+ * {@code to} included, given as ISO dates, and defaults to the last {@value #DEFAULT_DAYS} days.
+ */
+@RestController
+@RequestMapping("/admin/reports")
+public class SalesReportController {
+
+    static final int DEFAULT_DAYS = 30;
+
+    private SalesReportService salesReportService;
+
+    private OrderService orderService;
+
+    @Autowired
+    public SalesReportController(SalesReportService salesReportService, OrderService orderService) {
+        this.salesReportService = salesReportService;
+        this.orderService = orderService;
+    }
+
+    /**
+     * @return orders, units, revenue and average order value of each day that had orders
+     */
+    @GetMapping("/daily")
+    public List<DailySales> getDailySales(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        final LocalDate end = endOf(to);
+        return salesReportService.getDailySales(startOf(from, end), end);
+    }
+
+    /**
+     * @return orders, units, revenue and average order value over the whole range
+     */
+    @GetMapping("/summary")
+    public SalesSummary getSummary(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        final LocalDate end = endOf(to);
+        return salesReportService.getSummary(startOf(from, end), end);
+    }
+
+    /**
+     * @return the products that sold the most units over the range
+     */
+    @GetMapping("/top-products")
+    public List<ProductSales> getTopProducts(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        final LocalDate end = endOf(to);
+        return salesReportService.getTopProducts(startOf(from, end), end, limit);
+    }
+
+    /**
+     * @return a page of the orders placed over the range, most recent first, with the cursor of the next page
+     */
+    @GetMapping("/orders")
+    public ResponseEntity<OrderHistoryPage> getOrders(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "50") int size) {
+        final LocalDate end = endOf(to);
+        try {
+            return ResponseEntity.ok(orderService.getOrderHistory(startOf(from, end), end, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private static LocalDate endOf(LocalDate to) {
+        return to != null ? to : LocalDate.now();
+    }
+
+    private static LocalDate startOf(LocalDate from, LocalDate end) {
+        return from != null ? from : end.minusDays(DEFAULT_DAYS - 1);
+    }
+}
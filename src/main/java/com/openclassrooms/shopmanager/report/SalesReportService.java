@@ -0,0 +1,87 @@
+package com.openclassrooms.shopmanager.report;
+
+import com.openclassrooms.shopmanager.money.Money;
+import com.openclassrooms.shopmanager.order.Order;
+import com.openclassrooms.shopmanager.order.OrderLine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sales reports served from rollups: totals per day and per product and day, which are updated in the transaction
+ * storing the orders. Reports over any date range read at most one row per day, or per product sold and day, however
+ * many orders were placed.
+ */
+@Service
+public class SalesReportService {
+
+    public static final int MAX_TOP_PRODUCTS = 100;
+
+    private DailySalesRepository dailySalesRepository;
+
+    @Autowired
+    public SalesReportService(DailySalesRepository dailySalesRepository) {
+        this.dailySalesRepository = dailySalesRepository;
+    }
+
+    /**
+     * Adds orders to the rollups. Must be called in the transaction that stores the orders, so that the rollups are
+     * only updated if the orders are stored. The rollup rows are locked until the end of that transaction, so it is
+     * best called last.
+     *
+     * @param orders orders that are being stored, with their lines
+     */
+    @Transactional
+    public void recordOrders(Collection<Order> orders) {
+        // Sorted, so that concurrent transactions always lock the rollup rows in the same order
+        final Map<LocalDate, SalesTotals> totalsByDay = new TreeMap<>();
+        final Map<LocalDate, Map<Long, SalesTotals>> productTotalsByDay = new TreeMap<>();
+        for (Order order : orders) {
+            final SalesTotals dayTotals = totalsByDay.computeIfAbsent(order.getDate(), day -> new SalesTotals());
+            final Map<Long, SalesTotals> productTotals =
+                    productTotalsByDay.computeIfAbsent(order.getDate(), day -> new TreeMap<>());
+            dayTotals.addOrder();
+            for (OrderLine line : order.getLines()) {
+                final int quantity = line.getQuantity();
+                final Money amount = line.getPrice().times(quantity);
+                dayTotals.addItems(quantity, amount);
+                productTotals.computeIfAbsent(line.getProduct().getId(), productId -> new SalesTotals())
+                        .addItems(quantity, amount);
+            }
+        }
+
+        dailySalesRepository.addDailySales(totalsByDay);
+        productTotalsByDay.forEach(dailySalesRepository::addProductSales);
+    }
+
+    /**
+     * @return the totals of the days of the range that had orders, in ascending day order
+     */
+    @Transactional(readOnly = true)
+    public List<DailySales> getDailySales(LocalDate from, LocalDate to) {
+        return dailySalesRepository.findByDayBetweenOrderByDay(from, to);
+    }
+
+    /**
+     * @return number of orders and units, revenue and average order value over the range
+     */
+    @Transactional(readOnly = true)
+    public SalesSummary getSummary(LocalDate from, LocalDate to) {
+        return dailySalesRepository.sumDailySales(from, to);
+    }
+
+    /**
+     * @param limit maximum number of products to return, capped to {@link #MAX_TOP_PRODUCTS}
+     * @return the products that sold the most units over the range
+     */
+    @Transactional(readOnly = true)
+    public List<ProductSales> getTopProducts(LocalDate from, LocalDate to, int limit) {
+        return dailySalesRepository.findTopProducts(from, to, Math.max(1, Math.min(limit, MAX_TOP_PRODUCTS)));
+    }
+}
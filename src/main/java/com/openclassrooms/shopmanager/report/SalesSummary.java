@@ -0,0 +1,52 @@
+package com.openclassrooms.shopmanager.report;
+
+import com.openclassrooms.shopmanager.money.Money;
+
+import java.time.LocalDate;
+
+/**
+ * Totals of the orders placed over a date range.
+ */
+public class SalesSummary {
+
+    private final LocalDate from;
+    private final LocalDate to;
+    private final long orderCount;
+    private final long itemCount;
+    private final Money revenue;
+
+    public SalesSummary(LocalDate from, LocalDate to, long orderCount, long itemCount, Money revenue) {
+        this.from = from;
+        this.to = to;
+        this.orderCount = orderCount;
+        this.itemCount = itemCount;
+        this.revenue = revenue;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public long getItemCount() {
+        return itemCount;
+    }
+
+    public Money getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * @return average value of an order over the range, rounded to the cent
+     */
+    public Money getAverageOrderValue() {
+        return orderCount > 0 ? revenue.dividedBy(orderCount) : Money.ZERO;
+    }
+}
@@ -0,0 +1,34 @@
+package com.openclassrooms.shopmanager.report;
+
+import com.openclassrooms.shopmanager.money.Money;
+
+/**
+ * Number of orders, units and revenue added to a rollup row by a batch of orders.
+ */
+public class SalesTotals {
+
+    private long orderCount;
+    private long itemCount;
+    private Money revenue = Money.ZERO;
+
+    void addOrder() {
+        orderCount++;
+    }
+
+    void addItems(int quantity, Money amount) {
+        itemCount += quantity;
+        revenue = revenue.plus(amount);
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public long getItemCount() {
+        return itemCount;
+    }
+
+    public Money getRevenue() {
+        return revenue;
+    }
+}
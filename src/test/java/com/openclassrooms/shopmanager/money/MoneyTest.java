@@ -0,0 +1,71 @@
+package com.openclassrooms.shopmanager.money;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+import static org.junit.Assert.*;
+
+public class MoneyTest {
+
+    @Test
+    public void parse_DecimalAmounts_RoundedHalfEvenToTheCent() {
+        assertEquals(9250, Money.parse("92.5").getMinorUnits());
+        assertEquals(100, Money.parse(" 1.005 ").getMinorUnits());
+        assertEquals(102, Money.parse("1.015").getMinorUnits());
+        assertEquals(-101, Money.parse("-1.01").getMinorUnits());
+    }
+
+    @Test
+    public void of_Double_ShortestDecimalRepresentationUsed() {
+        assertEquals(Money.parse("0.10"), Money.of(0.1));
+        assertEquals(Money.parse("69.99"), Money.of(69.99));
+    }
+
+    @Test
+    public void plus_ManySmallAmounts_NoRoundingDrift() {
+        Money total = Money.ZERO;
+        for (int i = 0; i < 1000; i++)
+            total = total.plus(Money.parse("0.10"));
+
+        assertEquals(Money.parse("100.00"), total);
+    }
+
+    @Test
+    public void arithmetic_ValidOperands_ExactResults() {
+        assertEquals(Money.parse("277.50"), Money.parse("92.50").times(3));
+        assertEquals(Money.parse("83.01"), Money.parse("92.50").minus(Money.parse("9.49")));
+        assertEquals(Money.parse("3.33"), Money.parse("10").dividedBy(3));
+        assertEquals(Money.ofMinor(2), Money.ofMinor(5).dividedBy(2));
+        assertEquals(Money.ofMinor(4), Money.ofMinor(7).dividedBy(2));
+        assertEquals(Money.ofMinor(-4), Money.ofMinor(-7).dividedBy(2));
+    }
+
+    @Test
+    public void toString_Amount_PlainDecimalWithCents() {
+        assertEquals("92.50", Money.parse("92.5").toString());
+        assertEquals("0.00", Money.ZERO.toString());
+        assertEquals(new BigDecimal("895.00"), Money.parse("895").getAmount());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void times_Overflow_ThrowsException() {
+        Money.ofMinor(Long.MAX_VALUE / 2).times(3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void plus_DifferentCurrencies_ThrowsException() {
+        Money.ZERO.plus(Money.ofMinor(100, Currency.getInstance("EUR")));
+    }
+
+    @Test
+    public void converter_RoundTrip_SameAmount() {
+        final MoneyConverter converter = new MoneyConverter();
+
+        assertEquals(new BigDecimal("9.99"), converter.convertToDatabaseColumn(Money.parse("9.99")));
+        assertEquals(Money.parse("9.99"), converter.convertToEntityAttribute(new BigDecimal("9.990")));
+        assertNull(converter.convertToDatabaseColumn(null));
+        assertNull(converter.convertToEntityAttribute(null));
+    }
+}
@@ -0,0 +1,133 @@
+package com.openclassrooms.shopmanager.order;
+
+import com.openclassrooms.shopmanager.money.Money;
+import com.openclassrooms.shopmanager.product.Product;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CartStoreTest {
+
+    private static final int THREADS = 16;
+    private static final int ADDS_PER_THREAD = 1000;
+    private static final int PRODUCTS = 10;
+
+    @Test
+    public void getCart_SameKey_ReturnSameCart() {
+        final CartStore cartStore = new CartStore(10, 30);
+
+        assertSame(cartStore.getCart("session"), cartStore.getCart("session"));
+        assertNotSame(cartStore.getCart("session"), cartStore.getCart("otherSession"));
+    }
+
+    @Test
+    public void addItem_ConcurrentAddsToSharedCart_TotalsAreExact() throws Exception {
+        final CartStore cartStore = new CartStore(10, 30);
+        final List<Product> products = createTestProducts();
+
+        runConcurrently(thread -> {
+            final Cart cart = cartStore.getCart("session");
+            for (int i = 0; i < ADDS_PER_THREAD; i++)
+                cart.addItem(products.get(i % PRODUCTS), 1);
+        });
+
+        final Cart cart = cartStore.getCart("session");
+        assertEquals(PRODUCTS, cart.getCartLineList().size());
+        for (CartLine cartLine : cart.getCartLineList())
+            assertEquals(THREADS * ADDS_PER_THREAD / PRODUCTS, cartLine.getQuantity());
+        assertEquals(Money.ofMinor(THREADS * ADDS_PER_THREAD * 550L), cart.getTotalValue());
+    }
+
+    @Test
+    public void addItem_ConcurrentAddsToSeparateCarts_CartsAreIsolated() throws Exception {
+        final CartStore cartStore = new CartStore(THREADS, 30);
+        final List<Product> products = createTestProducts();
+
+        runConcurrently(thread -> {
+            final Cart cart = cartStore.getCart("session" + thread);
+            for (int i = 0; i < ADDS_PER_THREAD; i++)
+                cart.addItem(products.get(thread % PRODUCTS), 1);
+        });
+
+        assertEquals(THREADS, cartStore.size());
+        for (int thread = 0; thread < THREADS; thread++) {
+            final Cart cart = cartStore.getCart("session" + thread);
+            assertEquals(1, cart.getCartLineList().size());
+            assertEquals(ADDS_PER_THREAD, cart.getCartLineByIndex(0).getQuantity());
+        }
+    }
+
+    @Test
+    public void evictIdleCarts_CartsIdleLongerThanTimeout_CartsEvicted() {
+        final CartStore cartStore = new CartStore(10, 30);
+        cartStore.getCart("session").addItem(createTestProducts().get(0), 1);
+
+        assertEquals(0, cartStore.evictIdleCarts(System.currentTimeMillis()));
+        assertEquals(1, cartStore.evictIdleCarts(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(31)));
+        assertEquals(0, cartStore.size());
+        assertTrue(cartStore.getCart("session").getCartLineList().isEmpty());
+    }
+
+    @Test
+    public void getCart_StoreFull_LeastRecentlyUsedCartEvicted() throws InterruptedException {
+        final CartStore cartStore = new CartStore(2, 30);
+
+        cartStore.getCart("first");
+        Thread.sleep(5);
+        cartStore.getCart("second");
+        Thread.sleep(5);
+        cartStore.getCart("first");
+        cartStore.getCart("third");
+
+        assertEquals(2, cartStore.size());
+        final Cart first = cartStore.getCart("first");
+        assertEquals(2, cartStore.size());
+        assertSame(first, cartStore.getCart("first"));
+    }
+
+    private void runConcurrently(ThreadTask task) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                final int threadIndex = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run(threadIndex);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures)
+                future.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Product> createTestProducts() {
+        final List<Product> products = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            final Product product = new Product();
+            product.setId((long) i);
+            product.setName("Name" + i);
+            product.setQuantity(1);
+            product.setPrice(Money.ofMinor((i + 1) * 100L));
+            products.add(product);
+        }
+        return products;
+    }
+
+    private interface ThreadTask {
+        void run(int threadIndex);
+    }
+}
@@ -0,0 +1,112 @@
+package com.openclassrooms.shopmanager.order;
+
+import com.openclassrooms.shopmanager.money.Money;
+import com.openclassrooms.shopmanager.product.Product;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CartTest {
+
+    @Test
+    public void addItem_SameProductTwice_QuantityIncremented() {
+        final Cart cart = new Cart();
+        final Product product = createTestProduct(1L, "10");
+
+        cart.addItem(product, 1);
+        cart.addItem(createTestProduct(1L, "10"), 2);
+
+        assertEquals(1, cart.getCartLineList().size());
+        assertEquals(3, cart.getCartLineByIndex(0).getQuantity());
+        assertSame(product, cart.findProductInCartLines(1L));
+    }
+
+    @Test
+    public void getCartLineList_SeveralProducts_LinesInInsertionOrder() {
+        final Cart cart = new Cart();
+
+        cart.addItem(createTestProduct(3L, "10"), 1);
+        cart.addItem(createTestProduct(1L, "10"), 1);
+        cart.addItem(createTestProduct(2L, "10"), 1);
+        cart.addItem(createTestProduct(3L, "10"), 1);
+
+        final List<CartLine> cartLines = cart.getCartLineList();
+        assertEquals(Long.valueOf(3), cartLines.get(0).getProduct().getId());
+        assertEquals(Long.valueOf(1), cartLines.get(1).getProduct().getId());
+        assertEquals(Long.valueOf(2), cartLines.get(2).getProduct().getId());
+        assertEquals(Long.valueOf(2), cart.getCartLineByIndex(2).getProduct().getId());
+    }
+
+    @Test
+    public void removeLine_ProductInCart_LineRemoved() {
+        final Cart cart = new Cart();
+        cart.addItem(createTestProduct(1L, "10"), 1);
+        cart.addItem(createTestProduct(2L, "10"), 1);
+
+        cart.removeLine(createTestProduct(1L, "10"));
+
+        assertEquals(1, cart.getCartLineList().size());
+        assertNull(cart.findProductInCartLines(1L));
+        assertNotNull(cart.findProductInCartLines(2L));
+        assertFalse(cart.isEmpty());
+    }
+
+    @Test
+    public void getTotalValue_SeveralLines_SumOfSubtotals() {
+        final Cart cart = new Cart();
+
+        cart.addItem(createTestProduct(1L, "10"), 2);
+        cart.addItem(createTestProduct(2L, "5"), 1);
+
+        assertEquals(Money.parse("25.00"), cart.getTotalValue());
+        assertEquals(Money.parse("8.33"), cart.getAverageValue());
+    }
+
+    @Test
+    public void getTotalValue_ManyDecimalPrices_NoRoundingDrift() {
+        final Cart cart = new Cart();
+
+        for (long id = 1; id <= 10; id++)
+            cart.addItem(createTestProduct(id, "0.10"), 1);
+
+        assertEquals(Money.parse("1.00"), cart.getTotalValue());
+        assertEquals(Money.parse("0.10"), cart.getAverageValue());
+    }
+
+    @Test
+    public void getTotalValue_LinesRemovedOrChanged_TotalsFollow() {
+        final Cart cart = new Cart();
+        final Product first = createTestProduct(1L, "10");
+        cart.addItem(first, 2);
+        cart.addItem(createTestProduct(2L, "5"), 1);
+
+        cart.getCartLineByIndex(1).setQuantity(3);
+        assertEquals(Money.parse("35"), cart.getTotalValue());
+        assertEquals(5, cart.getTotalQuantity());
+
+        cart.removeLine(first);
+        assertEquals(Money.parse("15"), cart.getTotalValue());
+        assertEquals(Money.parse("5"), cart.getAverageValue());
+
+        cart.clear();
+        assertEquals(Money.ZERO, cart.getTotalValue());
+        assertEquals(Money.ZERO, cart.getAverageValue());
+        assertEquals(0, cart.getTotalQuantity());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getCartLineByIndex_IndexOutOfBounds_ThrowsException() {
+        new Cart().getCartLineByIndex(0);
+    }
+
+    private Product createTestProduct(Long id, String price) {
+        final Product product = new Product();
+        product.setId(id);
+        product.setName("Name" + id);
+        product.setQuantity(100);
+        product.setPrice(Money.parse(price));
+        return product;
+    }
+}
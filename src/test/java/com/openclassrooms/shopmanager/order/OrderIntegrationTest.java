@@ -1,29 +1,69 @@
 package com.openclassrooms.shopmanager.order;
 
 import com.openclassrooms.shopmanager.Application;
+import com.openclassrooms.shopmanager.product.Product;
+import com.openclassrooms.shopmanager.product.ProductRepository;
+import com.openclassrooms.shopmanager.product.ProductService;
+import com.openclassrooms.shopmanager.product.ProductStatus;
+import com.openclassrooms.shopmanager.product.ProductSummary;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.springframework.beans.MutablePropertyValues;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.ui.Model;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.support.BindingAwareModelMap;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(
         webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
-        classes = Application.class
+        classes = Application.class,
+        // Orders are stored as the checkout returns, see OrderPipelineIntegrationTest for the pipeline
+        properties = "shop.order.pipeline.enabled=false"
 )
 public class OrderIntegrationTest {
 
     @Autowired
     private OrderController orderController;
 
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Test
     public void retrieveEmptyCart() {
         final Model model = new BindingAwareModelMap();
@@ -48,10 +88,10 @@ public class OrderIntegrationTest {
         final Cart cart = (Cart) cartModel.asMap().get("cart");
         assertEquals(1, cart.getCartLineList().size());
         assertEquals(productId, cart.getCartLineByIndex(0).getProduct().getId());
-        assertTrue(cart.getTotalValue() > 0);
-        assertTrue(cart.getAverageValue() > 0);
+        assertTrue(cart.getTotalValue().isPositive());
+        assertTrue(cart.getAverageValue().isPositive());
         assertTrue(cart.getCartLineByIndex(0).getQuantity() > 0);
-        assertTrue(cart.getCartLineByIndex(0).getSubtotal() > 0);
+        assertTrue(cart.getCartLineByIndex(0).getSubtotal().isPositive());
         assertTrue(cart.getCartLineByIndex(0).getOrderLineID() >= 0);
     }
 
@@ -105,6 +145,70 @@ public class OrderIntegrationTest {
         assertFalse(order.getLines().isEmpty());
     }
 
+    @Test
+    @DirtiesContext
+    public void createValidOrderPersistsOrderAndLines() {
+        final Order order = new Order();
+        order.setName("Customer");
+
+        orderController.addToCart(1L);
+        orderController.addToCart(2L);
+        orderController.createOrder(order, new BeanPropertyBindingResult(order, "order"));
+
+        final List<Order> history = orderRepository.findAll().stream()
+                .filter(storedOrder -> "Customer".equals(storedOrder.getName()))
+                .collect(Collectors.toList());
+        assertEquals(1, history.size());
+        assertNotNull(history.get(0).getId());
+        assertEquals(2, orderLineCount(history.get(0).getId()));
+    }
+
+    @Test
+    public void orderFormBindsOnlyShippingDetails() {
+        final Order order = new Order();
+        final WebDataBinder binder = new WebDataBinder(order, "order");
+        final MutablePropertyValues values = new MutablePropertyValues();
+        values.add("Name", "Customer");
+        values.add("city", "Paris");
+        values.add("id", "42");
+        values.add("date", LocalDate.of(2000, 1, 1));
+
+        orderController.initOrderBinder(binder);
+        binder.bind(values);
+
+        assertEquals("Customer", order.getName());
+        assertEquals("Paris", order.getCity());
+        assertNull(order.getId());
+        assertNull(order.getDate());
+    }
+
+    @Test
+    @DirtiesContext
+    public void createValidOrderDatedToday() {
+        final Order order = new Order();
+        order.setDate(LocalDate.of(2000, 1, 1));
+
+        orderController.addToCart(1L);
+        orderController.createOrder(order, new BeanPropertyBindingResult(order, "order"));
+
+        assertEquals(LocalDate.now(), jdbcTemplate.queryForObject(
+                "SELECT order_date FROM orders WHERE id = ?", Date.class, order.getId()).toLocalDate());
+    }
+
+    @Test
+    @DirtiesContext
+    public void createValidOrderRemovesQuantitiesFromStock() {
+        final Long productId = 1L;
+        final int stock = productService.getByProductId(productId).getQuantity();
+        final Order order = new Order();
+
+        orderController.addToCart(productId);
+        orderController.addToCart(productId);
+        orderController.createOrder(order, new BeanPropertyBindingResult(order, "order"));
+
+        assertEquals(stock - 2, productService.getByProductId(productId).getQuantity());
+    }
+
     @Test
     @DirtiesContext
     public void attemptCreateEmptyOrder() {
@@ -118,4 +222,153 @@ public class OrderIntegrationTest {
         assertEquals(1, bindingResult.getErrorCount());
         assertEquals("cart.empty", bindingResult.getAllErrors().get(0).getCode());
     }
+
+    @Test
+    @DirtiesContext
+    public void attemptAddToCartExceedingStock() {
+        final Long productId = 1L;
+        final int stock = productService.getByProductId(productId).getQuantity();
+        final Model cartModel = new BindingAwareModelMap();
+
+        for (int i = 0; i < stock; i++)
+            assertEquals("redirect:/order/cart", orderController.addToCart(productId));
+        final String targetUrl = orderController.addToCart(productId);
+        orderController.getCart(cartModel);
+
+        assertEquals("redirect:/products", targetUrl);
+        assertEquals(stock, ((Cart) cartModel.asMap().get("cart")).getTotalQuantity());
+    }
+
+    @Test
+    @DirtiesContext
+    public void attemptCreateOrderExceedingStock() {
+        final Long productId = 1L;
+        final int stock = productService.getByProductId(productId).getQuantity();
+        final Order order = new Order();
+        final BindingResult bindingResult = new BeanPropertyBindingResult(order, "order");
+
+        for (int i = 0; i < stock; i++)
+            orderController.addToCart(productId);
+        // Stock sold through another channel, which the reservations cannot know about
+        jdbcTemplate.update("UPDATE product SET quantity = quantity - 1 WHERE id = ?", productId);
+        final String targetUrl = orderController.createOrder(order, bindingResult);
+
+        assertEquals("order", targetUrl);
+        assertEquals(1, bindingResult.getErrorCount());
+        assertEquals("cart.insufficientStock", bindingResult.getAllErrors().get(0).getCode());
+        assertEquals(stock - 1, productQuantity(productId));
+    }
+
+    @Test
+    @DirtiesContext
+    public void createOrderEmptyingStockKeepsProductAndOrderLines() {
+        final Long productId = 1L;
+        final int stock = productService.getByProductId(productId).getQuantity();
+        final Order order = new Order();
+
+        for (int i = 0; i < stock; i++)
+            orderController.addToCart(productId);
+        orderController.createOrder(order, new BeanPropertyBindingResult(order, "order"));
+
+        final Product product = productRepository.findById(productId).orElseThrow(IllegalStateException::new);
+        assertEquals(0, product.getQuantity());
+        assertEquals(ProductStatus.OUT_OF_STOCK, product.getStatus());
+        assertEquals(1, orderLineCount(order.getId()));
+        assertFalse(isInCatalog(productId));
+        assertEquals("redirect:/products", orderController.addToCart(productId));
+
+        assertTrue(productService.restockProduct(productId, 3));
+
+        assertEquals(ProductStatus.ACTIVE, productRepository.findById(productId).map(Product::getStatus).orElse(null));
+        assertEquals(3, productService.getByProductId(productId).getQuantity());
+        assertTrue(isInCatalog(productId));
+        assertEquals("redirect:/order/cart", orderController.addToCart(productId));
+    }
+
+    @Test
+    @DirtiesContext
+    public void deletedProductKeepsOrderLines() {
+        final Long productId = 2L;
+        final Order order = new Order();
+        orderController.addToCart(productId);
+        orderController.createOrder(order, new BeanPropertyBindingResult(order, "order"));
+
+        productService.deleteProduct(productId);
+
+        assertEquals(1, orderLineCount(order.getId()));
+        assertEquals(ProductStatus.RETIRED, productRepository.findById(productId).map(Product::getStatus).orElse(null));
+        assertNull(productService.getByProductId(productId));
+        assertFalse(isInCatalog(productId));
+        assertFalse(productService.restockProduct(productId, 3));
+        assertEquals("redirect:/products", orderController.addToCart(productId));
+    }
+
+    @Test
+    @DirtiesContext
+    public void parallelCheckoutsRemoveExactQuantitiesFromStock() throws Exception {
+        final int threads = 8;
+        final int ordersPerThread = 25;
+        jdbcTemplate.update("UPDATE product SET quantity = ? WHERE id IN (1, 2)", threads * ordersPerThread + 10);
+        final long versionBefore = productVersion(1L);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        // Each thread checks out from its own session cart, all carts holding the same two products
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit((Callable<Void>) () -> {
+                RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+                try {
+                    start.await();
+                    for (int i = 0; i < ordersPerThread; i++) {
+                        orderService.addToCart(1L);
+                        orderService.addToCart(2L);
+                        orderService.createOrder(new Order());
+                    }
+                } finally {
+                    RequestContextHolder.resetRequestAttributes();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+
+        assertEquals(10, productQuantity(1L));
+        assertEquals(10, productQuantity(2L));
+        assertEquals(threads * ordersPerThread, productVersion(1L) - versionBefore);
+        assertEquals(threads * ordersPerThread, orderRepository.count());
+    }
+
+    @Test(expected = ObjectOptimisticLockingFailureException.class)
+    @DirtiesContext
+    public void staleProductEditAfterCheckoutRejected() {
+        final Product staleProduct = productRepository.findById(1L).orElseThrow(IllegalStateException::new);
+        final Order order = new Order();
+
+        orderController.addToCart(1L);
+        orderController.createOrder(order, new BeanPropertyBindingResult(order, "order"));
+        staleProduct.setQuantity(staleProduct.getQuantity() + 5);
+        productRepository.save(staleProduct);
+    }
+
+    private boolean isInCatalog(Long productId) {
+        return productService.getProductsPage(null, 50).getProducts().stream()
+                .map(ProductSummary::getId)
+                .anyMatch(productId::equals);
+    }
+
+    private int productQuantity(Long productId) {
+        return jdbcTemplate.queryForObject("SELECT quantity FROM product WHERE id = ?", Integer.class, productId);
+    }
+
+    private long productVersion(Long productId) {
+        return jdbcTemplate.queryForObject("SELECT version FROM product WHERE id = ?", Long.class, productId);
+    }
+
+    private int orderLineCount(Long orderId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM order_line WHERE order_id = ?", Integer.class, orderId);
+    }
 }
@@ -0,0 +1,132 @@
+package com.openclassrooms.shopmanager.order;
+
+import com.openclassrooms.shopmanager.Application;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        classes = Application.class,
+        properties = "shop.order.pipeline.enabled=true"
+)
+public class OrderPipelineIntegrationTest {
+
+    @Autowired
+    private OrderController orderController;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderPipeline orderPipeline;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DirtiesContext
+    public void createOrderStoresOrderInBackground() throws InterruptedException {
+        final int stock = productQuantity(1L);
+        final Order order = new Order();
+        order.setName("Customer");
+        final BindingResult bindingResult = new BeanPropertyBindingResult(order, "order");
+
+        orderController.addToCart(1L);
+        orderController.addToCart(1L);
+        orderController.addToCart(2L);
+        final String targetUrl = orderController.createOrder(order, bindingResult);
+
+        assertEquals("orderCompleted", targetUrl);
+        assertFalse(bindingResult.hasErrors());
+        assertTrue(orderService.isCartEmpty());
+
+        awaitStoredOrders(1);
+        final List<Order> history = orderRepository.findAll().stream()
+                .filter(storedOrder -> "Customer".equals(storedOrder.getName()))
+                .collect(Collectors.toList());
+        assertEquals(1, history.size());
+        assertEquals(2, orderLineCount(history.get(0).getId()));
+        assertEquals(stock - 2, productQuantity(1L));
+    }
+
+    @Test
+    @DirtiesContext
+    public void parallelOrdersRemoveExactQuantitiesFromStock() throws Exception {
+        final int threads = 8;
+        final int ordersPerThread = 25;
+        jdbcTemplate.update("UPDATE product SET quantity = ? WHERE id IN (1, 2)", threads * ordersPerThread + 10);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit((Callable<Void>) () -> {
+                RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+                try {
+                    start.await();
+                    for (int i = 0; i < ordersPerThread; i++) {
+                        orderService.addToCart(1L);
+                        orderService.addToCart(2L);
+                        orderService.placeOrder(new Order());
+                    }
+                } finally {
+                    RequestContextHolder.resetRequestAttributes();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+
+        awaitStoredOrders(threads * ordersPerThread);
+        assertEquals(Long.valueOf(0), orderPipeline.getStats().get("failed"));
+        assertEquals(10, productQuantity(1L));
+        assertEquals(10, productQuantity(2L));
+        assertEquals(threads * ordersPerThread, orderRepository.count());
+    }
+
+    private void awaitStoredOrders(long count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (orderPipeline.getStats().get("processed") + orderPipeline.getStats().get("failed") < count) {
+            if (System.nanoTime() > deadline)
+                fail("Orders not stored in time: " + orderPipeline.getStats());
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private int productQuantity(Long productId) {
+        return jdbcTemplate.queryForObject("SELECT quantity FROM product WHERE id = ?", Integer.class, productId);
+    }
+
+    private int orderLineCount(Long orderId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM order_line WHERE order_id = ?", Integer.class, orderId);
+    }
+}
@@ -0,0 +1,178 @@
+package com.openclassrooms.shopmanager.order;
+
+import com.openclassrooms.shopmanager.money.Money;
+import com.openclassrooms.shopmanager.product.InsufficientStockException;
+import com.openclassrooms.shopmanager.product.InventoryRetryPolicy;
+import com.openclassrooms.shopmanager.product.Product;
+import com.openclassrooms.shopmanager.product.ProductService;
+import com.openclassrooms.shopmanager.product.StockReservationLedger;
+import com.openclassrooms.shopmanager.report.SalesReportService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OrderPipelineTest {
+
+    @Mock
+    OrderRepository orderRepository;
+
+    @Mock
+    ProductService productService;
+
+    @Mock
+    SalesReportService salesReportService;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    private final StockReservationLedger reservationLedger = new StockReservationLedger(15, 4);
+
+    private final List<Order> savedOrders = new ArrayList<>();
+
+    private final List<Map<Long, Integer>> stockUpdates = new ArrayList<>();
+
+    @Test
+    public void processBatch_SeveralOrders_StoredTogether() {
+        recordStockUpdates();
+        final OrderPipeline pipeline = createPipeline(10, 10);
+        final Product product1 = createProduct(1L, 5);
+        final Product product2 = createProduct(2L, 5);
+
+        submit(pipeline, "order1", product1, 2);
+        submit(pipeline, "order2", product1, 1);
+        submit(pipeline, "order3", product2, 3);
+
+        assertEquals(3, pipeline.processBatch());
+
+        assertEquals(3, savedOrders.size());
+        assertEquals(1, stockUpdates.size());
+        assertEquals(Integer.valueOf(3), stockUpdates.get(0).get(1L));
+        assertEquals(Integer.valueOf(3), stockUpdates.get(0).get(2L));
+        verify(orderRepository, times(1)).flush();
+        verify(salesReportService, times(1)).recordOrders(savedOrders);
+        assertEquals(2, reservationLedger.available(1L));
+        assertEquals(2, reservationLedger.available(2L));
+        assertEquals(Long.valueOf(3), pipeline.getStats().get("processed"));
+        assertEquals(Long.valueOf(1), pipeline.getStats().get("batches"));
+        assertEquals(Long.valueOf(0), pipeline.getStats().get("queueDepth"));
+    }
+
+    @Test
+    public void processBatch_MoreOrdersThanBatchSize_RestLeftQueued() {
+        recordStockUpdates();
+        final OrderPipeline pipeline = createPipeline(10, 2);
+        final Product product = createProduct(1L, 5);
+
+        submit(pipeline, "order1", product, 1);
+        submit(pipeline, "order2", product, 1);
+        submit(pipeline, "order3", product, 1);
+
+        assertEquals(2, pipeline.processBatch());
+        assertEquals(Long.valueOf(1), pipeline.getStats().get("queueDepth"));
+        assertEquals(1, pipeline.processBatch());
+        assertEquals(2, stockUpdates.size());
+    }
+
+    @Test
+    public void submit_QueueFull_Rejected() {
+        final OrderPipeline pipeline = createPipeline(1, 10);
+        final Product product = createProduct(1L, 5);
+
+        assertTrue(submit(pipeline, "order1", product, 1));
+        assertFalse(submit(pipeline, "order2", product, 1));
+
+        assertEquals(Long.valueOf(1), pipeline.getStats().get("accepted"));
+        assertEquals(Long.valueOf(1), pipeline.getStats().get("rejected"));
+        assertEquals(Long.valueOf(0), pipeline.getStats().get("queueRemainingCapacity"));
+    }
+
+    @Test
+    public void submit_PipelineStopped_Rejected() {
+        final OrderPipeline pipeline = createPipeline(10, 10);
+        final Product product = createProduct(1L, 5);
+
+        pipeline.stop();
+
+        assertFalse(pipeline.isRunning());
+        assertFalse(submit(pipeline, "order1", product, 1));
+        assertEquals(Long.valueOf(1), pipeline.getStats().get("rejected"));
+    }
+
+    @Test
+    public void processBatch_OneOrderFails_OthersStored() {
+        recordSavedOrders();
+        doAnswer(invocation -> {
+            final Map<Long, Integer> quantities = invocation.getArgument(0);
+            if (quantities.containsKey(2L))
+                throw new InsufficientStockException(2L);
+            return null;
+        }).when(productService).updateProductQuantities(anyMap());
+        final OrderPipeline pipeline = createPipeline(10, 10);
+        final Product product1 = createProduct(1L, 5);
+        final Product product2 = createProduct(2L, 5);
+
+        submit(pipeline, "order1", product1, 2);
+        submit(pipeline, "order2", product2, 2);
+        pipeline.processBatch();
+
+        assertEquals(Long.valueOf(1), pipeline.getStats().get("processed"));
+        assertEquals(Long.valueOf(1), pipeline.getStats().get("failed"));
+        assertEquals(3, reservationLedger.available(1L));
+        // The ledger no longer trusts the stock it had for the failing product
+        assertEquals(-1, reservationLedger.available(2L));
+    }
+
+    private void recordStockUpdates() {
+        recordSavedOrders();
+        doAnswer(invocation -> {
+            stockUpdates.add(new HashMap<>(invocation.<Map<Long, Integer>>getArgument(0)));
+            return null;
+        }).when(productService).updateProductQuantities(anyMap());
+    }
+
+    private void recordSavedOrders() {
+        doAnswer(invocation -> {
+            savedOrders.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        }).when(orderRepository).save(any(Order.class));
+    }
+
+    private OrderPipeline createPipeline(int queueCapacity, int batchSize) {
+        final OrderPipeline pipeline = new OrderPipeline(orderRepository, productService, reservationLedger,
+                new InventoryRetryPolicy(3, 0, 0), salesReportService, transactionManager, true, queueCapacity, 0, batchSize, 0);
+        // Without workers: the tests store the queued orders themselves
+        pipeline.start();
+        return pipeline;
+    }
+
+    private boolean submit(OrderPipeline pipeline, String holder, Product product, int quantity) {
+        assertTrue(reservationLedger.hold(holder, product, quantity));
+        final Cart cart = new Cart();
+        cart.addItem(product, quantity);
+        return pipeline.submit(new Order(), cart.getCartLineList(), holder);
+    }
+
+    private static Product createProduct(Long id, int quantity) {
+        final Product product = new Product();
+        product.setId(id);
+        product.setQuantity(quantity);
+        product.setPrice(Money.parse("1.01"));
+        product.setName("Name");
+        return product;
+    }
+}
@@ -1,19 +1,35 @@
 package com.openclassrooms.shopmanager.order;
 
+import com.openclassrooms.shopmanager.money.Money;
+import com.openclassrooms.shopmanager.product.InventoryRetryPolicy;
 import com.openclassrooms.shopmanager.product.Product;
 import com.openclassrooms.shopmanager.product.ProductService;
+import com.openclassrooms.shopmanager.product.StockReservationLedger;
+import com.openclassrooms.shopmanager.report.SalesReportService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 
@@ -28,6 +44,27 @@ public class OrderServiceTest {
     @Mock
     ProductService productService;
 
+    @Spy
+    CartStore cartStore = new CartStore(100, 30);
+
+    @Spy
+    StockReservationLedger reservationLedger = new StockReservationLedger(15, 4);
+
+    @Spy
+    InventoryRetryPolicy inventoryRetryPolicy = new InventoryRetryPolicy(3, 0, 0);
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    @Mock
+    OrderPipeline orderPipeline;
+
+    @Mock
+    SalesReportService salesReportService;
+
+    @Spy
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @Test
     public void addToCart_AddExistingProduct_ReturnTrue() {
         when(productService.getByProductId(anyLong())).thenReturn(createValidTestProduct());
@@ -50,6 +87,57 @@ public class OrderServiceTest {
         assertEquals(0, orderService.getCart().getCartLineList().size());
     }
 
+    @Test
+    public void addToCart_AllStockInCart_ReturnFalse() {
+        when(productService.getByProductId(anyLong())).thenReturn(createValidTestProduct());
+
+        orderService.addToCart(0L);
+        boolean productAdded = orderService.addToCart(0L);
+
+        assertFalse(productAdded);
+        assertEquals(1, orderService.getCart().getTotalQuantity());
+    }
+
+    @Test
+    public void removeFromCart_ProductRemoved_StockAvailableAgain() {
+        when(productService.getByProductId(anyLong())).thenReturn(createValidTestProduct());
+
+        orderService.addToCart(0L);
+        orderService.removeFromCart(0L);
+
+        assertEquals(1, reservationLedger.available(0L));
+        assertTrue(orderService.addToCart(0L));
+    }
+
+    @Test
+    public void removeFromCart_ConcurrentAdd_CartLinesStayHeld() throws Exception {
+        when(productService.getByProductId(anyLong())).thenReturn(createValidTestProduct());
+        orderService.addToCart(0L);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final List<Future<Boolean>> concurrentAdds = new LinkedList<>();
+        // Adds the product again from another thread once the line is removed, before its units are released
+        doAnswer(invocation -> {
+            final Future<Boolean> add = executor.submit(() -> orderService.addToCart(0L));
+            concurrentAdds.add(add);
+            try {
+                add.get(200, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Waiting for the cart, which the removal holds
+            }
+            return invocation.callRealMethod();
+        }).when(reservationLedger).release(anyString(), anyLong());
+
+        try {
+            orderService.removeFromCart(0L);
+            assertTrue(concurrentAdds.get(0).get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, orderService.getCart().getTotalQuantity());
+        assertEquals(0, reservationLedger.available(0L));
+    }
+
     @Test
     public void saveOrder_SaveValidOrder_OrderSavedSuccessfully() {
         final List<Order> orders = new LinkedList<>();
@@ -119,13 +207,50 @@ public class OrderServiceTest {
         assertEquals(1, orders.get(0).getLines().size());
         assertEquals("Name", orders.get(0).getLines().get(0).getProduct().getName());
         assertTrue(orderService.isCartEmpty());
+        assertEquals(1, meterRegistry.get("shop.checkout").tags("mode", "direct", "outcome", "stored").timer().count());
+        assertEquals(1, meterRegistry.get("shop.cart.size").summary().totalAmount(), 0);
+    }
+
+    @Test
+    public void submitOrder_Accepted_CartClearedAndUnitsStillHeld() {
+        final Order order = new Order();
+        when(productService.getByProductId(anyLong())).thenReturn(createValidTestProduct());
+        when(orderPipeline.submit(same(order), anyList(), anyString())).thenReturn(true);
+
+        orderService.addToCart(0L);
+        orderService.submitOrder(order);
+
+        assertTrue(orderService.isCartEmpty());
+        assertEquals(0, reservationLedger.available(0L));
+        assertFalse(orderService.addToCart(0L));
+    }
+
+    @Test
+    public void submitOrder_QueueFull_CartKept() {
+        final Order order = new Order();
+        when(productService.getByProductId(anyLong())).thenReturn(createValidTestProduct());
+        when(orderPipeline.submit(same(order), anyList(), anyString())).thenReturn(false);
+
+        orderService.addToCart(0L);
+        try {
+            orderService.submitOrder(order);
+            fail("Expected OrderQueueFullException");
+        } catch (OrderQueueFullException e) {
+            assertEquals(1, orderService.getCart().getTotalQuantity());
+        }
+        assertEquals(1, meterRegistry.get("shop.checkout").tags("mode", "pipeline", "outcome", "queueFull").timer()
+                .count());
+
+        // The units went back to the cart, which still holds them
+        orderService.removeFromCart(0L);
+        assertEquals(1, reservationLedger.available(0L));
     }
 
     private Product createValidTestProduct() {
         final Product product = new Product();
         product.setId(0L);
         product.setQuantity(1);
-        product.setPrice(1.01);
+        product.setPrice(Money.parse("1.01"));
         product.setName("Name");
         product.setDescription("Desc");
         product.setDetails("Details");
@@ -0,0 +1,73 @@
+package com.openclassrooms.shopmanager.product;
+
+import org.junit.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class InventoryRetryPolicyTest {
+
+    private final InventoryRetryPolicy retryPolicy = new InventoryRetryPolicy(3, 1, 2);
+
+    @Test
+    public void execute_ConflictThenSuccess_ResultOfRetryReturned() {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final String result = retryPolicy.execute(() -> {
+            if (attempts.incrementAndGet() == 1)
+                throw new ObjectOptimisticLockingFailureException(Product.class, 1L);
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals(2, attempts.get());
+        final Map<String, Long> stats = retryPolicy.getStats();
+        assertEquals(1L, (long) stats.get("executions"));
+        assertEquals(1L, (long) stats.get("conflicts"));
+        assertEquals(1L, (long) stats.get("retries"));
+        assertEquals(1L, (long) stats.get("recovered"));
+        assertEquals(0L, (long) stats.get("exhausted"));
+    }
+
+    @Test
+    public void execute_PersistentConflict_ContentionExceptionAfterMaxAttempts() {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            retryPolicy.execute(() -> {
+                attempts.incrementAndGet();
+                throw new CannotAcquireLockException("locked");
+            });
+            fail("Expected an InventoryContentionException");
+        } catch (InventoryContentionException e) {
+            assertEquals(3, e.getAttempts());
+            assertTrue(e.getCause() instanceof CannotAcquireLockException);
+        }
+
+        assertEquals(3, attempts.get());
+        assertEquals(3L, (long) retryPolicy.getStats().get("conflicts"));
+        assertEquals(2L, (long) retryPolicy.getStats().get("retries"));
+        assertEquals(1L, (long) retryPolicy.getStats().get("exhausted"));
+    }
+
+    @Test
+    public void execute_OtherFailure_NotRetried() {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            retryPolicy.execute(() -> {
+                attempts.incrementAndGet();
+                throw new DataIntegrityViolationException("constraint");
+            });
+            fail("Expected a DataIntegrityViolationException");
+        } catch (DataIntegrityViolationException e) {
+            assertEquals(1, attempts.get());
+            assertEquals(0L, (long) retryPolicy.getStats().get("conflicts"));
+        }
+    }
+}
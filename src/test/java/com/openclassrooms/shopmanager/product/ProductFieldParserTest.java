@@ -0,0 +1,85 @@
+package com.openclassrooms.shopmanager.product;
+
+import org.junit.Test;
+
+import static com.openclassrooms.shopmanager.product.ProductFieldParser.NOT_A_NUMBER;
+import static com.openclassrooms.shopmanager.product.ProductFieldParser.TOO_LARGE;
+import static org.junit.Assert.*;
+
+public class ProductFieldParserTest {
+
+    @Test
+    public void parsePrice_DecimalStrings_MinorUnitsReturned() {
+        assertEquals(101, ProductFieldParser.parsePrice("1.01"));
+        assertEquals(100, ProductFieldParser.parsePrice("1"));
+        assertEquals(150, ProductFieldParser.parsePrice(" 1.5 "));
+        assertEquals(50, ProductFieldParser.parsePrice(".5"));
+        assertEquals(100, ProductFieldParser.parsePrice("1."));
+        assertEquals(101, ProductFieldParser.parsePrice("+1.01D"));
+        assertEquals(101, ProductFieldParser.parsePrice("1.01f"));
+        assertEquals(-101, ProductFieldParser.parsePrice("-1.01"));
+        assertEquals(9250, ProductFieldParser.parsePrice("00092.50"));
+    }
+
+    @Test
+    public void parsePrice_Exponents_MinorUnitsReturned() {
+        assertEquals(150_000, ProductFieldParser.parsePrice("1.5e3"));
+        assertEquals(150, ProductFieldParser.parsePrice("15E-1"));
+        assertEquals(1, ProductFieldParser.parsePrice("1e-2"));
+        assertEquals(0, ProductFieldParser.parsePrice("1e-3"));
+        assertEquals(0, ProductFieldParser.parsePrice("1e-99999999999"));
+        assertEquals(0, ProductFieldParser.parsePrice("0e99999999999"));
+    }
+
+    @Test
+    public void parsePrice_MoreFractionDigitsThanCents_RoundedHalfEven() {
+        assertEquals(100, ProductFieldParser.parsePrice("1.005"));
+        assertEquals(102, ProductFieldParser.parsePrice("1.015"));
+        assertEquals(101, ProductFieldParser.parsePrice("1.0050001"));
+        assertEquals(101, ProductFieldParser.parsePrice("1.006"));
+        assertEquals(100, ProductFieldParser.parsePrice("1.004999"));
+        assertEquals(0, ProductFieldParser.parsePrice("0.004"));
+        assertEquals(-102, ProductFieldParser.parsePrice("-1.015"));
+    }
+
+    @Test
+    public void parsePrice_NonDecimalStrings_NotANumberReturned() {
+        for (String text : new String[]{"", " ", "Price", "1.01.01", "1,01", "1.01DDF", ".", "-", "1e", "1e+",
+                "d", "- 1", "NaN", "Infinity", "0x1p3", "١٢"})
+            assertEquals(text, NOT_A_NUMBER, ProductFieldParser.parsePrice(text));
+    }
+
+    @Test
+    public void parsePrice_HugePrices_TooLargeReturned() {
+        assertEquals(Long.MAX_VALUE, ProductFieldParser.parsePrice("92233720368547758.07"));
+        assertEquals(TOO_LARGE, ProductFieldParser.parsePrice("92233720368547758.08"));
+        assertEquals(TOO_LARGE, ProductFieldParser.parsePrice("92233720368547758.075"));
+        assertEquals(TOO_LARGE, ProductFieldParser.parsePrice("1e30"));
+        assertEquals(TOO_LARGE, ProductFieldParser.parsePrice("1e99999999999"));
+        assertEquals(-1, ProductFieldParser.parsePrice("-1e30"));
+    }
+
+    @Test
+    public void parseInteger_IntegerStrings_ValueReturned() {
+        assertEquals(1, ProductFieldParser.parseInteger("1"));
+        assertEquals(-1, ProductFieldParser.parseInteger("-1"));
+        assertEquals(7, ProductFieldParser.parseInteger("+007"));
+        assertEquals(Integer.MAX_VALUE, ProductFieldParser.parseInteger(String.valueOf(Integer.MAX_VALUE)));
+        assertEquals(Integer.MIN_VALUE, ProductFieldParser.parseInteger(String.valueOf(Integer.MIN_VALUE)));
+    }
+
+    @Test
+    public void parseInteger_NonIntegerStrings_NotANumberReturned() {
+        for (String text : new String[]{"", "-", "+", " 1", "1.0", "1L", "ten",
+                String.valueOf(Integer.MAX_VALUE + 1L), String.valueOf(Integer.MIN_VALUE - 1L)})
+            assertEquals(text, NOT_A_NUMBER, ProductFieldParser.parseInteger(text));
+    }
+
+    @Test
+    public void isBlank_Strings_TrueOnlyWithoutVisibleCharacters() {
+        assertTrue(ProductFieldParser.isBlank(null));
+        assertTrue(ProductFieldParser.isBlank(""));
+        assertTrue(ProductFieldParser.isBlank(" \t\n"));
+        assertFalse(ProductFieldParser.isBlank(" a "));
+    }
+}
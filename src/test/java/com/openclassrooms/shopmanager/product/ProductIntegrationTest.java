@@ -1,21 +1,44 @@
 package com.openclassrooms.shopmanager.product;
 
 import com.openclassrooms.shopmanager.Application;
+import com.openclassrooms.shopmanager.config.StatsController;
+import com.openclassrooms.shopmanager.money.Money;
 import com.openclassrooms.shopmanager.order.Cart;
 import com.openclassrooms.shopmanager.order.OrderController;
+import org.hibernate.cache.spi.RegionFactory;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.ui.Model;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.ObjectError;
 import org.springframework.validation.support.BindingAwareModelMap;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -32,13 +55,37 @@ public class ProductIntegrationTest {
     @Autowired
     private OrderController orderController;
 
+    @Autowired
+    private StatsController statsController;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ProductSearchIndex searchIndex;
+
+    @Autowired
+    private CatalogVersion catalogVersion;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @Test
     public void productsRetrievedSuccessfully() {
         final Model model = new BindingAwareModelMap();
 
-        final String targetUrl = productController.getProducts(model);
+        final String targetUrl = productController.getProducts(null, ProductService.DEFAULT_PAGE_SIZE, model);
 
-        final List<Product> displayedProducts = (List<Product>) model.asMap().get("products");
+        final List<ProductSummary> displayedProducts = (List<ProductSummary>) model.asMap().get("products");
         assertEquals("products", targetUrl);
         assertEquals(5, displayedProducts.size());
     }
@@ -47,13 +94,48 @@ public class ProductIntegrationTest {
     public void adminProductsRetrievedSuccessfully() {
         final Model model = new BindingAwareModelMap();
 
-        final String targetUrl = productController.getAdminProducts(model);
+        final String targetUrl = productController.getAdminProducts(null, ProductService.DEFAULT_PAGE_SIZE, model);
 
-        final List<Product> displayedProducts = (List<Product>) model.asMap().get("products");
+        final List<ProductSummary> displayedProducts = (List<ProductSummary>) model.asMap().get("products");
         assertEquals("productsAdmin", targetUrl);
         assertEquals(5, displayedProducts.size());
     }
 
+    @Test
+    public void productsRetrievedPageByPage() {
+        final Model firstPage = new BindingAwareModelMap();
+        final Model lastPage = new BindingAwareModelMap();
+
+        productController.getProducts(null, 3, firstPage);
+        productController.getProducts((Long) firstPage.asMap().get("nextCursor"), 3, lastPage);
+
+        final List<ProductSummary> firstProducts = (List<ProductSummary>) firstPage.asMap().get("products");
+        final List<ProductSummary> lastProducts = (List<ProductSummary>) lastPage.asMap().get("products");
+        assertEquals(3, firstProducts.size());
+        assertEquals(1L, firstProducts.get(0).getId(), 0);
+        assertEquals(3L, firstPage.asMap().get("nextCursor"));
+        assertEquals(2, lastProducts.size());
+        assertEquals(4L, lastProducts.get(0).getId(), 0);
+        assertNull(lastPage.asMap().get("nextCursor"));
+    }
+
+    @Test
+    public void adminProductsRetrievedPageByPage() {
+        final Model firstPage = new BindingAwareModelMap();
+        final Model secondPage = new BindingAwareModelMap();
+
+        productController.getAdminProducts(null, 2, firstPage);
+        productController.getAdminProducts((Long) firstPage.asMap().get("nextCursor"), 2, secondPage);
+
+        final List<ProductSummary> firstProducts = (List<ProductSummary>) firstPage.asMap().get("products");
+        final List<ProductSummary> secondProducts = (List<ProductSummary>) secondPage.asMap().get("products");
+        assertEquals(5L, firstProducts.get(0).getId(), 0);
+        assertEquals(4L, firstProducts.get(1).getId(), 0);
+        assertEquals(3L, secondProducts.get(0).getId(), 0);
+        assertEquals(2L, secondProducts.get(1).getId(), 0);
+        assertEquals(2L, secondPage.asMap().get("nextCursor"));
+    }
+
     @Test
     public void productFormRetrievedSuccessfully() {
         final Model model = new BindingAwareModelMap();
@@ -106,7 +188,7 @@ public class ProductIntegrationTest {
         final String targetDeleteProductUrl = productController.deleteProduct(productId, productModel);
         orderController.getCart(cartModel);
 
-        final List<Product> displayedAdminProducts = (List<Product>) productModel.asMap().get("products");
+        final List<ProductSummary> displayedAdminProducts = (List<ProductSummary>) productModel.asMap().get("products");
         final Cart cart = (Cart) cartModel.asMap().get("cart");
 
         assertEquals("productsAdmin", targetDeleteProductUrl);
@@ -115,6 +197,308 @@ public class ProductIntegrationTest {
         assertTrue(cart.getCartLineList().isEmpty()); // Since the product in the cart was removed by the admin, cart should be empty
     }
 
+    @Test
+    @DirtiesContext
+    public void cachedCatalogRefreshedAfterProductCreation() {
+        final Model model = new BindingAwareModelMap();
+        productController.getProducts(null, ProductService.DEFAULT_PAGE_SIZE, model);
+        final ProductModel productModel = createValidTestProductModel();
+
+        productController.createProduct(productModel, new BeanPropertyBindingResult(productModel, "product"));
+        productController.getProducts(null, ProductService.DEFAULT_PAGE_SIZE, model);
+
+        final List<ProductSummary> displayedProducts = (List<ProductSummary>) model.asMap().get("products");
+        assertEquals(6, displayedProducts.size());
+    }
+
+    @Test
+    @DirtiesContext
+    public void repeatedCatalogReadsServedFromCache() {
+        final Map<String, Object> statsBefore = statsController.getCacheStats().get(ProductService.PRODUCTS_CACHE);
+
+        productController.getProducts(null, ProductService.DEFAULT_PAGE_SIZE, new BindingAwareModelMap());
+        productController.getProducts(null, ProductService.DEFAULT_PAGE_SIZE, new BindingAwareModelMap());
+
+        final Map<String, Object> statsAfter = statsController.getCacheStats().get(ProductService.PRODUCTS_CACHE);
+        final long hits = (long) statsAfter.get("hits") - (long) statsBefore.get("hits");
+        final long misses = (long) statsAfter.get("misses") - (long) statsBefore.get("misses");
+        assertEquals(2, hits + misses);
+        assertTrue(hits >= 1);
+    }
+
+    @Test
+    @DirtiesContext
+    public void secondLevelCacheFollowsJdbcWrites() {
+        assertEquals(10, productRepository.findById(1L).get().getQuantity());
+        assertEquals(5, productRepository.findAllByStatusNotOrderByIdDesc(ProductStatus.RETIRED).size());
+
+        productService.restockProduct(1L, 5);
+        final Product product = new Product();
+        product.setName("Kindle");
+        product.setQuantity(3);
+        product.setPrice(Money.parse("129.99"));
+        productRepository.insertProducts(Collections.singletonList(product));
+
+        assertEquals(15, productRepository.findById(1L).get().getQuantity());
+        final List<Product> products = productRepository.findAllByStatusNotOrderByIdDesc(ProductStatus.RETIRED);
+        assertEquals(6, products.size());
+        assertEquals("Kindle", products.get(0).getName());
+        assertEquals(15, products.get(products.size() - 1).getQuantity());
+
+        // Read again, from the caches this time
+        productRepository.findById(1L);
+        productRepository.findAllByStatusNotOrderByIdDesc(ProductStatus.RETIRED);
+        final Map<String, Map<String, Long>> cacheStats = statsController.getSecondLevelCacheStats();
+        assertTrue(cacheStats.get(Product.class.getName()).get("hits") > 0);
+        assertTrue(cacheStats.get(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME).get("hits") > 0);
+    }
+
+    @Test
+    @DirtiesContext
+    public void unchangedCatalogPageNotRenderedAgain() {
+        final ResponseEntity<String> page = restTemplate.getForEntity("/products", String.class);
+        final String etag = page.getHeaders().getETag();
+        final HttpHeaders conditionalHeaders = new HttpHeaders();
+        conditionalHeaders.set(HttpHeaders.COOKIE, page.getHeaders().getFirst(HttpHeaders.SET_COOKIE));
+        conditionalHeaders.setIfNoneMatch(etag);
+
+        final ResponseEntity<String> unchangedPage = restTemplate.exchange("/products", HttpMethod.GET,
+                new HttpEntity<>(conditionalHeaders), String.class);
+        productService.restockProduct(1L, 5);
+        final ResponseEntity<String> changedPage = restTemplate.exchange("/products", HttpMethod.GET,
+                new HttpEntity<>(conditionalHeaders), String.class);
+
+        assertEquals(HttpStatus.OK, page.getStatusCode());
+        assertNotNull(etag);
+        assertEquals("no-cache, private", page.getHeaders().getCacheControl());
+        assertEquals(HttpStatus.NOT_MODIFIED, unchangedPage.getStatusCode());
+        assertNull(unchangedPage.getBody());
+        assertEquals(HttpStatus.OK, changedPage.getStatusCode());
+        assertNotEquals(etag, changedPage.getHeaders().getETag());
+        assertTrue(changedPage.getBody().contains("15"));
+    }
+
+    @Test
+    public void catalogPageNotValidatedByDate() {
+        final ResponseEntity<String> page = restTemplate.getForEntity("/products", String.class);
+        final HttpHeaders conditionalHeaders = new HttpHeaders();
+        conditionalHeaders.setIfModifiedSince(System.currentTimeMillis());
+
+        final ResponseEntity<String> pageOfAnotherSession = restTemplate.exchange("/products", HttpMethod.GET,
+                new HttpEntity<>(conditionalHeaders), String.class);
+
+        assertEquals(-1, page.getHeaders().getLastModified());
+        assertEquals(HttpStatus.OK, pageOfAnotherSession.getStatusCode());
+    }
+
+    @Test
+    @DirtiesContext
+    public void catalogListingCurrentOnceVersionChanged() {
+        final int quantity = quantityListed(1L);
+        final List<Integer> quantitiesListedAtNewVersion = new ArrayList<>();
+        final long versionBefore = catalogVersion.get();
+
+        // In the order of a service method that bumps the version, then has its listings evicted on return
+        new TransactionTemplate(transactionManager).execute(status -> {
+            productRepository.restock(1L, 5);
+            catalogVersion.bump();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    if (catalogVersion.get() != versionBefore)
+                        quantitiesListedAtNewVersion.add(quantityListed(1L));
+                }
+            });
+            cacheManager.getCache(ProductService.PRODUCTS_CACHE).clear();
+            return null;
+        });
+
+        assertEquals(Collections.singletonList(quantity + 5), quantitiesListedAtNewVersion);
+    }
+
+    private int quantityListed(Long productId) {
+        return productService.getProductsPage(null, ProductService.DEFAULT_PAGE_SIZE).getProducts().stream()
+                .filter(product -> product.getId().equals(productId))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new)
+                .getQuantity();
+    }
+
+    @Test
+    @DirtiesContext
+    public void onlyChangedProductRowsRenderedAgain() {
+        final String firstPage = restTemplate.getForObject("/products", String.class);
+        productService.restockProduct(1L, 5);
+        final Map<String, Object> statsBefore =
+                statsController.getCacheStats().get(ProductRowRenderer.PRODUCT_ROWS_CACHE);
+        final String secondPage = restTemplate.getForObject("/products", String.class);
+        final Map<String, Object> statsAfter =
+                statsController.getCacheStats().get(ProductRowRenderer.PRODUCT_ROWS_CACHE);
+
+        assertEquals(4L, (long) statsAfter.get("hits") - (long) statsBefore.get("hits"));
+        assertEquals(1L, (long) statsAfter.get("misses") - (long) statsBefore.get("misses"));
+        // Each page is served with the CSRF token of its own session in every row
+        final String csrfField = csrfField(secondPage);
+        assertNotEquals(csrfField(firstPage), csrfField);
+        assertEquals(5, secondPage.split(csrfField, -1).length - 1);
+        assertTrue(secondPage.contains("<td>15</td>"));
+    }
+
+    private static String csrfField(String page) {
+        final int start = page.indexOf("<input type=\"hidden\" name=\"_csrf\"");
+        return page.substring(start, page.indexOf('>', start) + 1);
+    }
+
+    @Test
+    public void productsSearchedByWordPrefix() {
+        final Model model = new BindingAwareModelMap();
+
+        final String targetUrl = productController.searchProducts("riptidz in", ProductService.DEFAULT_PAGE_SIZE, model);
+
+        final List<ProductSummary> displayedProducts = (List<ProductSummary>) model.asMap().get("products");
+        assertEquals("products", targetUrl);
+        assertEquals(2, displayedProducts.size());
+        assertEquals(Long.valueOf(3), displayedProducts.get(0).getId());
+        assertEquals(Long.valueOf(4), displayedProducts.get(1).getId());
+    }
+
+    @Test
+    @DirtiesContext
+    public void searchIndexFollowsCatalogChanges() {
+        final ProductModel productModel = createValidTestProductModel();
+        productModel.setName("Kindle Paperwhite");
+
+        productController.createProduct(productModel, new BeanPropertyBindingResult(productModel, "product"));
+        productController.deleteProduct(3L, new BindingAwareModelMap());
+        final Model kindleModel = new BindingAwareModelMap();
+        productController.searchProducts("kindle", ProductService.DEFAULT_PAGE_SIZE, kindleModel);
+        final Model headphoneModel = new BindingAwareModelMap();
+        productController.searchProducts("headphone", ProductService.DEFAULT_PAGE_SIZE, headphoneModel);
+
+        final List<ProductSummary> kindles = (List<ProductSummary>) kindleModel.asMap().get("products");
+        assertEquals(1, kindles.size());
+        assertEquals("Kindle Paperwhite", kindles.get(0).getName());
+        assertTrue(((List<ProductSummary>) headphoneModel.asMap().get("products")).isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void productsImportedFromCsv() throws IOException {
+        final String csv = "quantity,name,price,description\n" +
+                "3,\"Kindle, \"\"Paperwhite\"\"\",129.99,\"E-reader\nwith light\"\n" +
+                "1,,9.99,Missing name\n" +
+                "0,Empty stock,9.99,\n" +
+                "\n" +
+                "5,Fire TV Stick,39.99,Streaming\n";
+
+        final ProductImportReport report = productController.importProductsCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+        final Model model = new BindingAwareModelMap();
+        productController.getProducts(null, ProductService.DEFAULT_PAGE_SIZE, model);
+        final Model searchModel = new BindingAwareModelMap();
+        productController.searchProducts("paperwhite", ProductService.DEFAULT_PAGE_SIZE, searchModel);
+
+        assertEquals(4, report.getRowsRead());
+        assertEquals(2, report.getRowsImported());
+        assertEquals(2, report.getErrorCount());
+        assertEquals(2, report.getErrors().get(0).getRow());
+        assertEquals(Collections.singletonList("product.MissingName"), report.getErrors().get(0).getErrors());
+        assertEquals(3, report.getErrors().get(1).getRow());
+        assertEquals(Collections.singletonList("product.QuantityNotGreaterThanZero"), report.getErrors().get(1).getErrors());
+        assertEquals(7, ((List<ProductSummary>) model.asMap().get("products")).size());
+        final List<ProductSummary> found = (List<ProductSummary>) searchModel.asMap().get("products");
+        assertEquals(1, found.size());
+        assertEquals("Kindle, \"Paperwhite\"", found.get(0).getName());
+        assertEquals("E-reader\nwith light", found.get(0).getDescription());
+    }
+
+    @Test
+    @DirtiesContext
+    public void productsImportedFromJsonLines() throws IOException {
+        final String jsonLines = "{\"name\": \"Kindle\", \"price\": 129.99, \"quantity\": 3, \"color\": \"black\"}\n" +
+                "{\"name\": \"Broken\"\n" +
+                "{\"name\": \"Fire TV Stick\", \"price\": \"39.99\", \"quantity\": \"5\"}\n";
+
+        final ProductImportReport report = productController.importProductsJsonLines(
+                new ByteArrayInputStream(jsonLines.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3, report.getRowsRead());
+        assertEquals(2, report.getRowsImported());
+        assertEquals(1, report.getErrorCount());
+        assertEquals(2, report.getErrors().get(0).getRow());
+        assertEquals(Collections.singletonList("import.MalformedRow"), report.getErrors().get(0).getErrors());
+    }
+
+    @Test
+    @DirtiesContext
+    public void importRowsOverMaxLengthRejected() throws IOException {
+        final char[] longText = new char[ProductImportService.MAX_ROW_LENGTH];
+        Arrays.fill(longText, 'x');
+        final String csv = "name,price,quantity\n" +
+                "\"Long, \"\"quoted\"\"\n" + new String(longText) + "\",9.99,1\n" +
+                "Kindle,129.99,3\n";
+        final String jsonLines = "{\"name\": \"" + new String(longText) + "\", \"price\": 9.99, \"quantity\": 1}\n" +
+                "{\"name\": \"Fire TV Stick\", \"price\": 39.99, \"quantity\": 5}\n";
+        final int indexedBefore = searchIndex.size();
+
+        final ProductImportReport csvReport = productController.importProductsCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+        final ProductImportReport jsonReport = productController.importProductsJsonLines(
+                new ByteArrayInputStream(jsonLines.getBytes(StandardCharsets.UTF_8)));
+
+        for (ProductImportReport report : Arrays.asList(csvReport, jsonReport)) {
+            assertEquals(2, report.getRowsRead());
+            assertEquals(1, report.getRowsImported());
+            assertEquals(1, report.getErrors().get(0).getRow());
+            assertEquals(Collections.singletonList("import.RowTooLong"), report.getErrors().get(0).getErrors());
+        }
+        assertEquals(indexedBefore + 2, searchIndex.size());
+        assertEquals(1, productService.searchProducts("kindle", 10).size());
+    }
+
+    @Test
+    public void csvImportWithoutHeaderRejected() throws IOException {
+        final ProductImportReport report = productController.importProductsCsv(
+                new ByteArrayInputStream("Kindle,129.99,3\n".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(0, report.getRowsImported());
+        assertEquals(Collections.singletonList("import.InvalidHeader"), report.getErrors().get(0).getErrors());
+    }
+
+    @Test
+    public void catalogExportedAsCsv() throws IOException {
+        final ResponseEntity<StreamingResponseBody> response = productController.exportProducts("csv");
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+
+        final String[] lines = output.toString(StandardCharsets.UTF_8.name()).split("\n");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(6, lines.length);
+        assertEquals(ProductExportService.CSV_HEADER, lines[0]);
+        assertEquals("3,JVC HAFX8R Headphone,\"Riptidz, In-Ear\",ss,69.99,30", lines[3]);
+    }
+
+    @Test
+    @DirtiesContext
+    public void catalogExportedAsJsonLinesCanBeImportedBack() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        productController.exportProducts("jsonl").getBody().writeTo(output);
+
+        final ProductImportReport report = productController.importProductsJsonLines(
+                new ByteArrayInputStream(output.toByteArray()));
+        final Model model = new BindingAwareModelMap();
+        productController.getProducts(null, ProductService.DEFAULT_PAGE_SIZE, model);
+
+        assertEquals(5, report.getRowsImported());
+        assertEquals(0, report.getErrorCount());
+        assertEquals(10, ((List<ProductSummary>) model.asMap().get("products")).size());
+    }
+
+    @Test
+    public void catalogExportInUnknownFormatRejected() {
+        assertEquals(HttpStatus.BAD_REQUEST, productController.exportProducts("xml").getStatusCode());
+    }
+
     private ProductModel createValidTestProductModel() {
         final ProductModel productModel = new ProductModel();
         productModel.setQuantity("1");
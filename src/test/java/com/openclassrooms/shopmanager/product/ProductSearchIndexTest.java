@@ -0,0 +1,81 @@
+package com.openclassrooms.shopmanager.product;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ProductSearchIndexTest {
+
+    private ProductSearchIndex searchIndex;
+
+    @Before
+    public void setUp() {
+        searchIndex = new ProductSearchIndex(null);
+        searchIndex.add(createTestProduct(1L, "Echo Dot", "Smart speaker", "Black"));
+        searchIndex.add(createTestProduct(2L, "Speaker stand", "Fits the Echo Dot", ""));
+        searchIndex.add(createTestProduct(3L, "JVC Headphone", "In-Ear", "Comes with a speaker cable"));
+    }
+
+    @Test
+    public void tokenize_MixedCaseAccentsAndPunctuation_ReturnLowerCaseWordsWithoutAccents() {
+        assertEquals(Arrays.asList("premiere", "generation", "noir", "2"),
+                ProductSearchIndex.tokenize("Première Génération - NOIR (2)"));
+        assertTrue(ProductSearchIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    public void search_TermInSeveralFields_RankedByField() {
+        assertEquals(Arrays.asList(2L, 1L, 3L), searchIndex.search("speaker", 10));
+    }
+
+    @Test
+    public void search_SeveralTerms_OnlyProductsMatchingAllTermsReturned() {
+        assertEquals(Arrays.asList(1L, 2L), searchIndex.search("echo dot", 10));
+        assertEquals(Collections.singletonList(3L), searchIndex.search("speaker cable", 10));
+        assertTrue(searchIndex.search("echo cable", 10).isEmpty());
+    }
+
+    @Test
+    public void search_WordPrefix_PrefixMatchesReturnedAfterExactMatches() {
+        searchIndex.add(createTestProduct(4L, "Head", "", ""));
+
+        assertEquals(Arrays.asList(4L, 3L), searchIndex.search("head", 10));
+        assertTrue(searchIndex.search("h", 10).isEmpty());
+    }
+
+    @Test
+    public void search_Limit_BestMatchesReturned() {
+        assertEquals(Collections.singletonList(2L), searchIndex.search("speaker", 1));
+        assertTrue(searchIndex.search("speaker", 0).isEmpty());
+        assertTrue(searchIndex.search("  ", 10).isEmpty());
+    }
+
+    @Test
+    public void remove_RemovedProduct_NotReturned() {
+        searchIndex.remove(2L);
+
+        assertEquals(Arrays.asList(1L, 3L), searchIndex.search("speaker", 10));
+        assertEquals(2, searchIndex.size());
+    }
+
+    @Test
+    public void add_ProductAlreadyIndexed_NotCountedTwice() {
+        searchIndex.add(createTestProduct(2L, "Speaker stand", "Fits the Echo Dot", ""));
+
+        assertEquals(Arrays.asList(2L, 1L, 3L), searchIndex.search("speaker", 10));
+        assertEquals(3, searchIndex.size());
+    }
+
+    private Product createTestProduct(Long id, String name, String description, String details) {
+        final Product product = new Product();
+        product.setId(id);
+        product.setName(name);
+        product.setDescription(description);
+        product.setDetails(details);
+        return product;
+    }
+}
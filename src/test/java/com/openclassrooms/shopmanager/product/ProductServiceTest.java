@@ -1,21 +1,37 @@
 package com.openclassrooms.shopmanager.product;
 
+import com.openclassrooms.shopmanager.money.Money;
 import com.openclassrooms.shopmanager.order.Cart;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.domain.PageRequest;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -33,6 +49,21 @@ public class ProductServiceTest {
     @Mock
     ProductRepository productRepository;
 
+    @Mock
+    CacheManager cacheManager;
+
+    @Mock
+    ProductSearchIndex searchIndex;
+
+    @Mock
+    StockReservationLedger reservationLedger;
+
+    @Spy
+    CatalogVersion catalogVersion = new CatalogVersion(new ConcurrentMapCacheManager());
+
+    @Spy
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @Test
     public void isStringDouble_NonDoubleStrings_returnFalse() {
         assertFalse(productService.isStringDouble("Double"));
@@ -82,7 +113,7 @@ public class ProductServiceTest {
         product2.setId(2L);
         product2.setName("First product");
 
-        when(productRepository.findAll()).thenReturn(Arrays.asList(product1, product2));
+        when(productRepository.findAllByStatusNot(ProductStatus.RETIRED)).thenReturn(Arrays.asList(product1, product2));
 
         List<Product> products = productService.getAllProducts();
 
@@ -91,6 +122,30 @@ public class ProductServiceTest {
         assertEquals(2L, products.get(1).getId(), 0);
     }
 
+    @Test
+    public void getProductsPage_MoreProductsThanPageSize_NextCursorReturned() {
+        final List<ProductSummary> products = new LinkedList<>();
+        for (long id = 11; id <= 13; id++)
+            products.add(new ProductSummary(id, "Name", "Desc", Money.parse("1.01"), 1));
+        when(productRepository.findSummariesAfter(10L, PageRequest.of(0, 3))).thenReturn(products);
+
+        final ProductPage page = productService.getProductsPage(10L, 2);
+
+        assertEquals(2, page.getProducts().size());
+        assertEquals(12L, page.getNextCursor(), 0);
+    }
+
+    @Test
+    public void getProductsPage_LastPage_NoNextCursor() {
+        when(productRepository.findSummariesAfter(0L, PageRequest.of(0, ProductService.MAX_PAGE_SIZE + 1)))
+                .thenReturn(Collections.singletonList(new ProductSummary(1L, "Name", "Desc", Money.parse("1.01"), 1)));
+
+        final ProductPage page = productService.getProductsPage(null, Integer.MAX_VALUE);
+
+        assertEquals(1, page.getProducts().size());
+        assertNull(page.getNextCursor());
+    }
+
     @Test
     public void createProduct_MissingName_MissingNameErrorMessageReturned() {
         final ProductModel productModel = new ProductModel();
@@ -193,6 +248,50 @@ public class ProductServiceTest {
         assertTrue(errors.contains("product.QuantityNotGreaterThanZero"));
     }
 
+    @Test
+    public void createProduct_PriceTooHigh_PriceTooHighErrorMessageReturned() {
+        final ProductModel productModel = createValidTestProductModel();
+        productModel.setPrice("1e20");
+
+        final List<String> errors = productService.checkProductIsValid(productModel);
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.contains("product.PriceTooHigh"));
+    }
+
+    @Test
+    public void validateProduct_ValidProduct_FieldsParsed() {
+        final ValidatedProduct validatedProduct = productService.validateProduct(createValidTestProductModel());
+
+        assertTrue(validatedProduct.isValid());
+        assertTrue(validatedProduct.getErrors().isEmpty());
+        assertEquals(Money.parse("1.01"), validatedProduct.getPrice());
+        assertEquals(1, validatedProduct.getQuantity());
+        assertEquals("Name", validatedProduct.toProduct().getName());
+    }
+
+    @Test
+    public void validateProduct_ReusedAfterInvalidProduct_PreviousErrorsKeptAndCleared() {
+        final ProductModel invalidModel = createValidTestProductModel();
+        invalidModel.setQuantity("0");
+        final ValidatedProduct validatedProduct = new ValidatedProduct();
+
+        final List<String> errors = productService.validateProduct(invalidModel, validatedProduct).getErrors();
+        productService.validateProduct(createValidTestProductModel(), validatedProduct);
+
+        assertEquals(Collections.singletonList("product.QuantityNotGreaterThanZero"), errors);
+        assertTrue(validatedProduct.isValid());
+        assertEquals(1, validatedProduct.getQuantity());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void createProduct_InvalidValidatedProduct_ThrowsException() {
+        final ProductModel productModel = createValidTestProductModel();
+        productModel.setName(" ");
+
+        productService.createProduct(productService.validateProduct(productModel));
+    }
+
     @Test
     public void createProduct_ValidProduct_createProductSuccessful() {
         final List<Product> products = new LinkedList<>();
@@ -201,7 +300,7 @@ public class ProductServiceTest {
             products.add(savedProduct);
             return savedProduct;
         });
-        when(productRepository.findAll()).thenReturn(products);
+        when(productRepository.findAllByStatusNot(ProductStatus.RETIRED)).thenReturn(products);
 
         productService.createProduct(createValidTestProductModel());
         final List<Product> storedProducts = productService.getAllProducts();
@@ -209,7 +308,7 @@ public class ProductServiceTest {
         assertEquals(1, storedProducts.size());
         assertEquals("Name", storedProducts.get(0).getName());
         assertEquals(1, storedProducts.get(0).getQuantity());
-        assertEquals(1.01, storedProducts.get(0).getPrice(), 0);
+        assertEquals(Money.parse("1.01"), storedProducts.get(0).getPrice());
         assertEquals("Desc", storedProducts.get(0).getDescription());
         assertEquals("Details", storedProducts.get(0).getDetails());
     }
@@ -224,11 +323,10 @@ public class ProductServiceTest {
             products.add(savedProduct);
             return savedProduct;
         });
-        when(productRepository.findAll()).thenReturn(products);
+        when(productRepository.findAllByStatusNot(ProductStatus.RETIRED)).thenReturn(products);
         doAnswer(invocation -> {
-            products.removeIf(product -> invocation.getArgument(0).equals(product.getId()));
-            return null;
-        }).when(productRepository).deleteById(anyLong());
+            return products.removeIf(product -> invocation.getArgument(0).equals(product.getId())) ? 1 : 0;
+        }).when(productRepository).retire(anyLong());
 
         productService.createProduct(createValidTestProductModel());
         productService.deleteProduct(productService.getAllProducts().get(0).getId());
@@ -244,7 +342,7 @@ public class ProductServiceTest {
 
         assertEquals("Name", retrievedProduct.getName());
         assertEquals(1, retrievedProduct.getQuantity());
-        assertEquals(1.01, retrievedProduct.getPrice(), 0);
+        assertEquals(Money.parse("1.01"), retrievedProduct.getPrice());
         assertEquals("Desc", retrievedProduct.getDescription());
         assertEquals("Details", retrievedProduct.getDetails());
     }
@@ -257,6 +355,26 @@ public class ProductServiceTest {
         assertNull(retrievedProduct);
     }
 
+    @Test
+    public void restockProduct_ExistingProduct_StockAddedToLedger() {
+        when(productRepository.restock(1L, 5)).thenReturn(1);
+        final long catalogVersionBefore = catalogVersion.get();
+
+        assertTrue(productService.restockProduct(1L, 5));
+        verify(reservationLedger).addStock(1L, 5);
+        assertNotEquals(catalogVersionBefore, catalogVersion.get());
+    }
+
+    @Test
+    public void restockProduct_UnknownProduct_ReturnFalse() {
+        when(productRepository.restock(1L, 5)).thenReturn(0);
+        final long catalogVersionBefore = catalogVersion.get();
+
+        assertFalse(productService.restockProduct(1L, 5));
+        verify(reservationLedger, never()).addStock(anyLong(), anyInt());
+        assertEquals(catalogVersionBefore, catalogVersion.get());
+    }
+
     @Test
     public void updateProductQuantities_ModifyStockQuantities_AllProductQuantitiesModified() {
         final List<Product> products = new LinkedList<>();
@@ -268,33 +386,100 @@ public class ProductServiceTest {
             products.add(newProduct);
         }
 
-        when(productRepository.findById(anyLong())).then(invocation ->
-                products.stream().filter(product -> product.getId().equals(invocation.getArgument(0))).findFirst()
-        );
-        doAnswer(invocation -> {
-            final Product productToBeRemoved = invocation.getArgument(0);
-            products.removeIf(product -> product.getId().equals(productToBeRemoved.getId()));
-            return null;
-        }).when(productRepository).delete(any(Product.class));
-        when(productRepository.save(any(Product.class))).then(invocation -> {
-            final Product productToBeSaved = invocation.getArgument(0);
-            products.removeIf(product -> product.getId().equals(productToBeSaved.getId()));
-            products.add(productToBeSaved);
-            return productToBeSaved;
-        });
+        mockStockUpdates(products);
 
         final Cart cart = new Cart();
         int[] quantitiesToAddToCart = {1, 2, 1, 2};
         products.forEach(product -> cart.addItem(product, quantitiesToAddToCart[Math.toIntExact(product.getId())]));
 
-        // First two products should be removed from the 'products' list, since they are out of stock
+        // First two products should be marked out of stock, but kept
         productService.updateProductQuantities(cart);
 
-        assertEquals(2, products.size());
-        assertEquals("Name2", products.get(0).getName());
-        assertEquals(2, products.get(0).getQuantity());
-        assertEquals("Name3", products.get(1).getName());
-        assertEquals(2, products.get(1).getQuantity());
+        assertEquals(4, products.size());
+        assertEquals(0, products.get(0).getQuantity());
+        assertEquals(ProductStatus.OUT_OF_STOCK, products.get(0).getStatus());
+        assertEquals(0, products.get(1).getQuantity());
+        assertEquals(ProductStatus.OUT_OF_STOCK, products.get(1).getStatus());
+        assertEquals(2, products.get(2).getQuantity());
+        assertEquals(ProductStatus.ACTIVE, products.get(2).getStatus());
+        assertEquals(2, products.get(3).getQuantity());
+        assertEquals(ProductStatus.ACTIVE, products.get(3).getStatus());
+        assertEquals(4, meterRegistry.get("shop.stock.update.rows").summary().totalAmount(), 0);
+    }
+
+    @Test(expected = InsufficientStockException.class)
+    public void updateProductQuantities_NotEnoughStock_ThrowInsufficientStockException() {
+        final Product product = createValidTestProduct();
+        product.setId(1L);
+        final List<Product> products = new LinkedList<>(Collections.singletonList(product));
+        mockStockUpdates(products);
+
+        final Cart cart = new Cart();
+        cart.addItem(product, 2);
+
+        productService.updateProductQuantities(cart);
+    }
+
+    @Test
+    public void updateProductQuantities_OneProductOutOfStock_NoQuantityModified() {
+        final List<Product> products = new LinkedList<>();
+        for (int i = 0; i < 2; i++) {
+            final Product newProduct = createValidTestProduct();
+            newProduct.setId((long) i);
+            newProduct.setQuantity(5);
+            products.add(newProduct);
+        }
+        mockStockUpdates(products);
+
+        final Cart cart = new Cart();
+        cart.addItem(products.get(0), 1);
+        cart.addItem(products.get(1), 6);
+
+        try {
+            productService.updateProductQuantities(cart);
+            fail("Order exceeding the stock must be rejected");
+        } catch (InsufficientStockException e) {
+            assertEquals(1L, e.getProductId(), 0);
+        }
+        verify(productRepository, never()).markOutOfStock(anyCollection());
+        assertEquals(5, products.get(0).getQuantity());
+        assertEquals(5, products.get(1).getQuantity());
+        assertEquals(1, meterRegistry.get("shop.stock.update.failures").tag("cause", "InsufficientStockException")
+                .counter().count(), 0);
+    }
+
+    /**
+     * Simulates the conditional stock updates of the repository against the given list of products. As in the
+     * database, the updates are all rolled back if one of them fails.
+     */
+    private void mockStockUpdates(final List<Product> products) {
+        when(productRepository.decrementQuantities(anyMap())).then(invocation -> {
+            final Map<Long, Integer> quantities = invocation.getArgument(0);
+            final int[] updateCounts = new int[quantities.size()];
+            int i = 0;
+            for (Map.Entry<Long, Integer> quantity : quantities.entrySet()) {
+                updateCounts[i++] = (int) products.stream()
+                        .filter(product -> product.getId().equals(quantity.getKey()))
+                        .filter(product -> product.getQuantity() >= quantity.getValue())
+                        .count();
+            }
+            if (Arrays.stream(updateCounts).allMatch(count -> count > 0)) {
+                products.forEach(product -> product.setQuantity(
+                        product.getQuantity() - quantities.getOrDefault(product.getId(), 0)));
+            }
+            return updateCounts;
+        });
+        lenient().when(productRepository.markOutOfStock(anyCollection())).then(invocation -> {
+            final Collection<Long> productIds = invocation.getArgument(0);
+            int marked = 0;
+            for (Product product : products) {
+                if (productIds.contains(product.getId()) && product.getQuantity() < 1) {
+                    product.setStatus(ProductStatus.OUT_OF_STOCK);
+                    marked++;
+                }
+            }
+            return marked;
+        });
     }
 
     private ProductModel createValidTestProductModel() {
@@ -310,7 +495,7 @@ public class ProductServiceTest {
     private Product createValidTestProduct() {
         final Product product = new Product();
         product.setQuantity(1);
-        product.setPrice(1.01);
+        product.setPrice(Money.parse("1.01"));
         product.setName("Name");
         product.setDescription("Desc");
         product.setDetails("Details");
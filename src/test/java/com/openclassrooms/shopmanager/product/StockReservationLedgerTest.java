@@ -0,0 +1,154 @@
+package com.openclassrooms.shopmanager.product;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StockReservationLedgerTest {
+
+    private static final long TTL = TimeUnit.MINUTES.toMillis(15);
+
+    private final StockReservationLedger ledger = new StockReservationLedger(15, 8);
+
+    @Test
+    public void hold_WithinStock_UnitsHeld() {
+        final Product product = createProduct(1L, 5);
+
+        assertTrue(ledger.hold("cart1", product, 2, 0));
+        assertTrue(ledger.hold("cart2", product, 3, 0));
+
+        assertEquals(0, ledger.available(1L));
+    }
+
+    @Test
+    public void hold_BeyondStockLeft_Refused() {
+        final Product product = createProduct(1L, 5);
+        ledger.hold("cart1", product, 4, 0);
+
+        assertFalse(ledger.hold("cart2", product, 2, 0));
+        assertTrue(ledger.hold("cart1", product, 5, 0));
+        assertEquals(0, ledger.available(1L));
+    }
+
+    @Test
+    public void hold_FewerUnits_UnitsReleased() {
+        final Product product = createProduct(1L, 5);
+        ledger.hold("cart1", product, 4, 0);
+
+        assertTrue(ledger.hold("cart1", product, 1, 0));
+
+        assertEquals(4, ledger.available(1L));
+    }
+
+    @Test
+    public void release_HeldUnits_AvailableToOthers() {
+        final Product product = createProduct(1L, 2);
+        ledger.hold("cart1", product, 2, 0);
+
+        ledger.release("cart1", 1L);
+
+        assertTrue(ledger.hold("cart2", product, 2, 0));
+    }
+
+    @Test
+    public void hold_ExpiredHoldOfOtherCart_UnitsTakenOver() {
+        final Product product = createProduct(1L, 2);
+        ledger.hold("cart1", product, 2, 0);
+
+        assertFalse(ledger.hold("cart2", product, 1, TTL - 1));
+        assertTrue(ledger.hold("cart2", product, 1, TTL));
+        assertFalse(ledger.hold("cart1", product, 2, TTL));
+    }
+
+    @Test
+    public void expireHolds_ExpiredHolds_ReleasedAndProductsDropped() {
+        ledger.hold("cart1", createProduct(1L, 5), 2, 0);
+        ledger.hold("cart2", createProduct(2L, 5), 1, TTL / 2);
+
+        assertEquals(2, ledger.expireHolds(TTL));
+
+        assertEquals(-1, ledger.available(1L));
+        assertEquals(4, ledger.available(2L));
+    }
+
+    @Test
+    public void commit_HeldUnits_StockDecremented() {
+        final Product product = createProduct(1L, 5);
+        ledger.hold("cart1", product, 2, 0);
+        ledger.hold("cart2", product, 1, 0);
+
+        ledger.commit("cart1", Collections.singletonMap(1L, 2));
+
+        assertEquals(2, ledger.available(1L));
+        assertFalse(ledger.hold("cart3", product, 3, 0));
+    }
+
+    @Test
+    public void commit_LastUnits_ProductDropped() {
+        final Product product = createProduct(1L, 2);
+        ledger.hold("cart1", product, 2, 0);
+
+        ledger.commit("cart1", Collections.singletonMap(1L, 2));
+
+        assertEquals(-1, ledger.available(1L));
+    }
+
+    @Test
+    public void transfer_HeldUnits_KeptHeldAndRenewed() {
+        final Product product = createProduct(1L, 3);
+        ledger.hold("cart1", product, 2, 0);
+
+        ledger.transfer("cart1", "order1", 1L, TTL / 2);
+
+        assertEquals(1, ledger.available(1L));
+        assertTrue(ledger.hold("cart1", product, 1, 0));
+        assertEquals(1, ledger.expireHolds(TTL));
+        assertEquals(1, ledger.available(1L));
+    }
+
+    @Test
+    public void hold_ConcurrentCarts_NeverMoreUnitsThanStock() throws Exception {
+        final int threads = 8;
+        final Product product = createProduct(1L, 100);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final String cart = "cart" + t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                int held = 0;
+                for (int i = 0; i < 50; i++) {
+                    if (ledger.hold(cart, product, held + 1))
+                        held++;
+                }
+                return held;
+            }));
+        }
+        start.countDown();
+
+        int total = 0;
+        for (Future<Integer> future : futures)
+            total += future.get();
+        executor.shutdown();
+
+        assertEquals(100, total);
+        assertEquals(0, ledger.available(1L));
+    }
+
+    private static Product createProduct(Long id, int quantity) {
+        final Product product = new Product();
+        product.setId(id);
+        product.setQuantity(quantity);
+        return product;
+    }
+}
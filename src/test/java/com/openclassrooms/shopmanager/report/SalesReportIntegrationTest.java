@@ -0,0 +1,128 @@
+package com.openclassrooms.shopmanager.report;
+
+import com.openclassrooms.shopmanager.Application;
+import com.openclassrooms.shopmanager.money.Money;
+import com.openclassrooms.shopmanager.order.Order;
+import com.openclassrooms.shopmanager.order.OrderHistoryPage;
+import com.openclassrooms.shopmanager.order.OrderService;
+import com.openclassrooms.shopmanager.order.OrderSummary;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        classes = Application.class,
+        properties = "shop.order.pipeline.enabled=false"
+)
+public class SalesReportIntegrationTest {
+
+    @Autowired
+    private SalesReportController salesReportController;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DirtiesContext
+    public void createdOrdersAddedToRollups() {
+        final LocalDate today = LocalDate.now();
+
+        orderService.addToCart(1L);
+        orderService.addToCart(1L);
+        orderService.addToCart(2L);
+        orderService.createOrder(new Order());
+        orderService.addToCart(2L);
+        orderService.addToCart(2L);
+        orderService.addToCart(2L);
+        orderService.createOrder(new Order());
+
+        final List<DailySales> dailySales = salesReportController.getDailySales(null, null);
+        assertEquals(1, dailySales.size());
+        assertEquals(today, dailySales.get(0).getDay());
+        assertEquals(2, dailySales.get(0).getOrderCount());
+        assertEquals(6, dailySales.get(0).getItemCount());
+        assertEquals(Money.parse("224.96"), dailySales.get(0).getRevenue());
+        assertEquals(Money.parse("112.48"), dailySales.get(0).getAverageOrderValue());
+
+        final SalesSummary summary = salesReportController.getSummary(today.minusDays(7), today);
+        assertEquals(2, summary.getOrderCount());
+        assertEquals(Money.parse("224.96"), summary.getRevenue());
+
+        final List<ProductSales> topProducts = salesReportController.getTopProducts(today, today, 10);
+        assertEquals(2, topProducts.size());
+        assertEquals(Long.valueOf(2L), topProducts.get(0).getProductId());
+        assertEquals(4, topProducts.get(0).getQuantity());
+        assertEquals(Money.parse("39.96"), topProducts.get(0).getRevenue());
+        assertEquals(Long.valueOf(1L), topProducts.get(1).getProductId());
+        assertEquals("Echo Dot", topProducts.get(1).getName());
+    }
+
+    @Test
+    @DirtiesContext
+    public void reportsOutsideRangeEmpty() {
+        final LocalDate yesterday = LocalDate.now().minusDays(1);
+
+        orderService.addToCart(1L);
+        orderService.createOrder(new Order());
+
+        assertTrue(salesReportController.getDailySales(yesterday.minusDays(7), yesterday).isEmpty());
+        assertEquals(0, salesReportController.getSummary(yesterday, yesterday).getOrderCount());
+        assertEquals(Money.ZERO, salesReportController.getSummary(yesterday, yesterday).getAverageOrderValue());
+        assertTrue(salesReportController.getTopProducts(yesterday, yesterday, 10).isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void orderHistoryPagedMostRecentFirst() {
+        final LocalDate day = LocalDate.of(2026, 3, 10);
+        insertOrder(1001L, day.minusDays(1));
+        insertOrder(1002L, day);
+        insertOrder(1003L, day);
+        insertOrder(1004L, day.plusDays(1));
+        insertOrder(1005L, day.minusDays(2));
+        insertOrder(1006L, day.plusDays(2));
+
+        final List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            final OrderHistoryPage page = salesReportController.getOrders(day.minusDays(1), day.plusDays(1), cursor, 2)
+                    .getBody();
+            ids.addAll(page.getOrders().stream().map(OrderSummary::getId).collect(Collectors.toList()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(2, pages);
+        assertEquals(Arrays.asList(1004L, 1003L, 1002L, 1001L), ids);
+    }
+
+    @Test
+    public void orderHistoryInvalidCursorRejected() {
+        assertEquals(HttpStatus.BAD_REQUEST, salesReportController.getOrders(null, null, "yesterday", 10).getStatusCode());
+    }
+
+    private void insertOrder(Long id, LocalDate date) {
+        jdbcTemplate.update("INSERT INTO orders (id, order_date, name) VALUES (?, ?, ?)", id, Date.valueOf(date),
+                "Customer " + id);
+    }
+}